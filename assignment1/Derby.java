@@ -4,15 +4,21 @@ import assignment1.model.Count;
 import assignment1.model.DateTime;
 import assignment1.model.Sensor;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * important - code reference:
@@ -38,7 +44,7 @@ public class Derby {
     /**
      * Date Time ID set to eliminate duplicates
      */
-    private Set<Integer> dateIdSet;
+    private IntHashSet dateIdSet;
     /**
      * Sensor List to store all sensor entities
      */
@@ -46,7 +52,7 @@ public class Derby {
     /**
      * Sensor ID set to eliminate duplicates
      */
-    private Set<Integer> sensorIdSet;
+    private IntHashSet sensorIdSet;
     private String dateTable;
     private String sensorTable;
     private String countTable;
@@ -55,6 +61,53 @@ public class Derby {
      * SQL statement array including create, insert, select
      */
     private String[][] sqlList;
+    /**
+     * primary key and foreign key statements of each table, run after create table or after the bulk import
+     */
+    private String[][] constraintList;
+    /**
+     * secondary index statements of each table, run with the keys
+     */
+    private String[][] indexList;
+    /**
+     * number of rows sent to the Database in one JDBC batch, 1 sends every row on its own
+     */
+    private int batchSize;
+    /**
+     * number of rows inserted between two commits, 0 commits once when all the tables are loaded
+     */
+    private int commitInterval;
+    /**
+     * true to load each table from a staging file through SYSCS_UTIL.SYSCS_IMPORT_TABLE instead of JDBC inserts
+     */
+    private boolean bulkImport;
+    /**
+     * true to load the bare tables first and build the keys and indexes on the loaded data afterwards,
+     * always true in bulk import mode
+     */
+    private boolean deferKeys;
+    /**
+     * number of connections inserting the count table in parallel, 1 inserts on the main connection
+     */
+    private int threads;
+    /**
+     * URL of the Database, the parallel connections are opened on it
+     */
+    private String dbUrl;
+    /**
+     * true to insert the rows while the CSV file is read, only the datetime and sensor IDs are kept in memory
+     */
+    private boolean stream;
+    /**
+     * insert statements of the datetime, sensor and count tables while streaming, null when loading from memory
+     */
+    private PreparedStatement dateInsert;
+    private PreparedStatement sensorInsert;
+    private PreparedStatement countInsert;
+    /**
+     * number of count rows added to the batches while streaming
+     */
+    private int streamedCounts;
 
     /**
      * convert the month or day into respective number, "January" -> 1, "Wednesday" -> 3
@@ -124,6 +177,7 @@ public class Derby {
         System.err.println("assignment1.Derby program starts ...");
         // initialise list containers for counts, datetime and sensor
         derby.init();
+        derby.parseOptions(args);
         // loading data from CSV file to memory then store into assignment1.Derby Database
         derby.loadDate(path);
         System.err.println("assignment1.Derby program finished ...");
@@ -131,7 +185,7 @@ public class Derby {
 
     /**
      * Verify if the command line arguments meet the requirement
-     * standard format: java assignment1.Derby datafile
+     * standard format: java assignment1.Derby datafile [-batch size] [-commit rows] [-bulk] [-defer] [-threads n] [-stream]
      * args-1: path for datafile
      *
      * @param args an array of String arguments
@@ -143,13 +197,52 @@ public class Derby {
         // if 1 condition met, a) no file path provided; b) file does not exist
         if (args == null || args.length < required || !(new File(args[0]).exists())) {
             System.err.println("insufficient number of arguments OR invalid arguments OR CSV file not exist");
-            System.err.println("command to execute the program: java assignment1.Derby datafile");
-            System.err.println("example: java assignment1.Derby file.csv");
+            System.err.println("command to execute the program: java assignment1.Derby datafile [-batch size] [-commit rows] [-bulk] [-defer] [-threads n] [-stream]");
+            System.err.println("example: java assignment1.Derby file.csv -batch 1000 -commit 100000");
             return false;
         }
         return true;
     }
 
+    /**
+     * Read the optional loading settings after the file path
+     * -batch size: number of rows per JDBC batch, e.g. -batch 1000, 1 inserts row by row
+     * -commit rows: commit every given number of rows, e.g. -commit 100000, by default one commit at the end
+     * -bulk: import the tables from staging files, the keys are added after the import as with -defer
+     * -defer: insert into the bare tables, the keys and indexes are built after the load
+     * -threads n: insert the count table on n connections, each one a range of IDs, ignored with -bulk
+     * -stream: insert the rows in batches while the file is read instead of loading it in memory first,
+     * -bulk and -threads are ignored
+     *
+     * @param args command line arguments
+     */
+    private void parseOptions(String[] args) {
+        for (int i = 1; i < args.length; i++) {
+            try {
+                if ("-batch".equals(args[i]) && i + 1 < args.length) {
+                    batchSize = Math.max(toInt(args[++i]), 1);
+                } else if ("-commit".equals(args[i]) && i + 1 < args.length) {
+                    commitInterval = Math.max(toInt(args[++i]), 0);
+                } else if ("-bulk".equals(args[i])) {
+                    bulkImport = true;
+                } else if ("-defer".equals(args[i])) {
+                    deferKeys = true;
+                } else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                    threads = Math.max(toInt(args[++i]), 1);
+                } else if ("-stream".equals(args[i])) {
+                    stream = true;
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("invalid number for " + args[i - 1] + ": " + args[i]);
+            }
+        }
+        // -bulk is ignored while streaming, otherwise the import fills bare tables and implies -defer
+        if (stream) {
+            bulkImport = false;
+        }
+        deferKeys |= bulkImport;
+    }
+
     /**
      * important - code reference:
      * https://www.guru99.com/buffered-reader-in-java.html
@@ -158,49 +251,70 @@ public class Derby {
      * 2. date time entity
      * 3. sensor entity
      *
+     * In streaming mode the file is read while the tables are loaded, see streamTables
+     *
      * @param path the directory path leads to the source file
      */
     private void loadDate(String path) {
+        if (stream) {
+            importToDerby(path);
+            return;
+        }
+        try {
+            readCsv(path);
+
+            // sort all the lists in ascending order before importing to assignment1.Derby, use comparator mechanism
+            dateTimeList.sort((o1, o2) -> o1.getId() - o2.getId());
+            sensorList.sort((o1, o2) -> o1.getId() - o2.getId());
+            countList.sort((o1, o2) -> o1.getId() - o2.getId());
+            // use std_err as required
+            System.err.println("all the data from CSV file loaded into the memory completes ...");
+
+            // import all list containers into assignment1.Derby DB
+            importToDerby(null);
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read every record of the csv file and add its attributes to the entities,
+     * into the lists in memory or into the insert batches while streaming
+     *
+     * @param path the directory path leads to the source file
+     * @throws IOException  when reading the file fails
+     * @throws SQLException when sending a batch fails while streaming
+     */
+    private void readCsv(String path) throws IOException, SQLException {
         // auto closable without having to code finally code block
         // code reference: https://www.guru99.com/buffered-reader-in-java.html
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            final String comma = ",";
-            boolean isHeader = true;
-            String record;
-            String[] data;
+        try (InputStream in = new FileInputStream(path)) {
+            // byte-level tokenizer, ints are parsed from the bytes and quoted fields may hold commas
+            CsvTokenizer data = new CsvTokenizer(in);
 
             // record attributes
             int countId, dateId, year, month, date, day, time, sensorId, hourlyCounts;
-            String dateDesc, yearStr, monthStr, dateStr, dayStr, timeStr, sensorName;
+            String dateDesc, monthStr, dayStr, sensorName;
 
             // attributes index
             int countIdIdx = 0, dateTimeIdx = 1, yearIdx = 2, monthIdx = 3, dateIdx = 4;
             int dayIdx = 5, timeIdx = 6, sensorIdIdx = 7, sensorNameIdx = 8, hourlyCountsIdx = 9;
 
-            while ((record = br.readLine()) != null) {
-                // skip the 1st line which is header
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                data = record.split(comma);
-
+            // skip the 1st line which is header
+            data.nextLine();
+            while (data.nextLine()) {
                 // extract the each attribute from the record, remove any space left-side and right-side
-                countId = toInt(data[countIdIdx].trim());
-                dateDesc = data[dateTimeIdx].trim();
-                yearStr = data[yearIdx].trim();
-                monthStr = data[monthIdx].trim();
-                dateStr = data[dateIdx].trim();
-                dayStr = data[dayIdx].trim();
-                timeStr = data[timeIdx].trim();
-                sensorId = toInt(data[sensorIdIdx].trim());
-                sensorName = data[sensorNameIdx].trim();
-                hourlyCounts = toInt(data[hourlyCountsIdx].trim());
-
-                // convert String into Int
-                year = toInt(yearStr);
-                date = toInt(dateStr);
-                time = toInt(timeStr);
+                countId = data.getInt(countIdIdx);
+                dateDesc = data.getString(dateTimeIdx).trim();
+                monthStr = data.getString(monthIdx).trim();
+                dayStr = data.getString(dayIdx).trim();
+                sensorId = data.getInt(sensorIdIdx);
+                sensorName = data.getString(sensorNameIdx).trim();
+                hourlyCounts = data.getInt(hourlyCountsIdx);
+
+                year = data.getInt(yearIdx);
+                date = data.getInt(dateIdx);
+                time = data.getInt(timeIdx);
                 // convert month and day into int, e.g. "September" -> 9, "Monday" -> 1
                 month = getInt(monthStr, months);
                 day = getInt(dayStr, days);
@@ -208,26 +322,13 @@ public class Derby {
                 // use year + month + date + time for datetime id
                 // e.g. year - 2009, month - 10, date - 6, time - 9
                 // datetime id will be 2009100609
-                dateId = toInt(yearStr + (month < 10 ? "0" + month : month)
-                        + (date < 10 ? "0" + date : date) + (time < 10 ? "0" + time : time));
+                dateId = ((year * 100 + month) * 100 + date) * 100 + time;
 
                 // add attributes of each entity into different list containers
                 addToDateList(dateId, dateDesc, year, month, date, day, time);
                 addToSensorList(sensorId, sensorName);
                 addToCountList(countId, hourlyCounts, dateId, sensorId);
             }
-
-            // sort all the lists in ascending order before importing to assignment1.Derby, use comparator mechanism
-            dateTimeList.sort((o1, o2) -> o1.getId() - o2.getId());
-            sensorList.sort((o1, o2) -> o1.getId() - o2.getId());
-            countList.sort((o1, o2) -> o1.getId() - o2.getId());
-            // use std_err as required
-            System.err.println("all the data from CSV file loaded into the memory completes ...");
-
-            // import all list containers into assignment1.Derby DB
-            importToDerby();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
@@ -235,51 +336,346 @@ public class Derby {
      * Insert all the dates from date list to assignment1.Derby DB
      *
      * @param psInsert prepared statement for insertion
+     * @return number of rows inserted
      * @throws SQLException SQL exception
      */
-    private void insertDates(PreparedStatement psInsert) throws SQLException {
+    private int insertDates(PreparedStatement psInsert) throws SQLException {
+        int rows = 0;
         for (DateTime date : dateTimeList) {
-            psInsert.setInt(1, date.getId());
-            psInsert.setString(2, date.getDesc());
-            psInsert.setInt(3, date.getYear());
-            psInsert.setInt(4, date.getMonth());
-            psInsert.setInt(5, date.getDate());
-            psInsert.setInt(6, date.getDay());
-            psInsert.setInt(7, date.getTime());
-            psInsert.executeUpdate();
+            setDate(psInsert, date);
+            addRow(psInsert, ++rows, commitInterval);
         }
+        flush(psInsert);
+        return rows;
     }
 
     /**
      * Insert all the sensors from sensor list to assignment1.Derby DB
      *
      * @param psInsert prepared statement for insertion
+     * @return number of rows inserted
      * @throws SQLException SQL exception
      */
-    private void insertSensors(PreparedStatement psInsert) throws SQLException {
+    private int insertSensors(PreparedStatement psInsert) throws SQLException {
+        int rows = 0;
         for (Sensor sensor : sensorList) {
-            psInsert.setInt(1, sensor.getId());
-            psInsert.setString(2, sensor.getName());
-            psInsert.executeUpdate();
+            setSensor(psInsert, sensor);
+            addRow(psInsert, ++rows, commitInterval);
         }
+        flush(psInsert);
+        return rows;
+    }
+
+    /**
+     * Set the columns of a datetime row as the parameters of the insert statement
+     *
+     * @param psInsert prepared statement for insertion
+     * @param date     datetime entity
+     * @throws SQLException SQL exception
+     */
+    private static void setDate(PreparedStatement psInsert, DateTime date) throws SQLException {
+        psInsert.setInt(1, date.getId());
+        psInsert.setString(2, date.getDesc());
+        psInsert.setInt(3, date.getYear());
+        psInsert.setInt(4, date.getMonth());
+        psInsert.setInt(5, date.getDate());
+        psInsert.setInt(6, date.getDay());
+        psInsert.setInt(7, date.getTime());
     }
 
     /**
-     * Insert all the counts from counts list to assignment1.Derby DB
+     * Set the columns of a sensor row as the parameters of the insert statement
      *
      * @param psInsert prepared statement for insertion
+     * @param sensor   sensor entity
+     * @throws SQLException SQL exception
+     */
+    private static void setSensor(PreparedStatement psInsert, Sensor sensor) throws SQLException {
+        psInsert.setInt(1, sensor.getId());
+        psInsert.setString(2, sensor.getName());
+    }
+
+    /**
+     * Insert the counts of a part of the counts list to assignment1.Derby DB
+     *
+     * @param psInsert    prepared statement for insertion
+     * @param counts      counts to insert
+     * @param commitEvery number of rows between two commits, 0 never commits
+     * @return number of rows inserted
      * @throws SQLException SQL exception
      */
-    private void insertCounts(PreparedStatement psInsert) throws SQLException {
-        for (Count count : countList) {
+    private int insertCounts(PreparedStatement psInsert, List<Count> counts, int commitEvery) throws SQLException {
+        int rows = 0;
+        for (Count count : counts) {
             psInsert.setInt(1, count.getId());
             psInsert.setInt(2, count.getHourlyCount());
             psInsert.setInt(3, count.getDateTimeId());
             psInsert.setInt(4, count.getSensorId());
-            psInsert.executeUpdate();
+            addRow(psInsert, ++rows, commitEvery);
+        }
+        flush(psInsert);
+        return rows;
+    }
+
+    /**
+     * Insert all the counts from counts list on parallel connections, the sorted list is split into
+     * one contiguous range of IDs per connection and each range is inserted by a worker thread.
+     * The connections are committed together once every range is inserted, if any range fails they are all
+     * rolled back. The tables must be committed before, the other connections do not see uncommitted data.
+     *
+     * @param insertSql SQL insert statement of the count table
+     * @return number of rows inserted
+     * @throws SQLException SQL exception of a worker, after the rollback of every connection
+     */
+    private int insertCountsParallel(String insertSql) throws SQLException {
+        int size = countList.size();
+        int workers = Math.max(Math.min(threads, size), 1);
+        List<Connection> connections = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            // every connection is opened before any worker starts, a failed open leaves no insert running
+            for (int w = 0; w < workers; w++) {
+                Connection worker = DriverManager.getConnection(dbUrl);
+                connections.add(worker);
+                worker.setAutoCommit(false);
+            }
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                Connection worker = connections.get(w);
+                List<Count> counts = countList.subList((int) ((long) size * w / workers), (int) ((long) size * (w + 1) / workers));
+                results.add(pool.submit(() -> {
+                    try (PreparedStatement psInsert = worker.prepareStatement(insertSql)) {
+                        // no intermediate commit, the ranges are committed together
+                        return insertCounts(psInsert, counts, 0);
+                    }
+                }));
+            }
+            int rows = 0;
+            SQLException failure = null;
+            // wait for every worker, so none is still inserting when the connections are rolled back
+            for (Future<Integer> result : results) {
+                try {
+                    rows += result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                                : new SQLException("count insertion failed", e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new SQLException("interrupted while inserting counts", e);
+                    }
+                }
+            }
+            if (failure != null) {
+                System.err.printf("Sub task: rolling back the counts of %d connections%n", connections.size());
+                throw failure;
+            }
+            for (Connection worker : connections) {
+                worker.commit();
+            }
+            return rows;
+        } finally {
+            pool.shutdownNow();
+            for (Connection worker : connections) {
+                try {
+                    // closing a connection in a transaction fails, after the commit there is nothing to roll back
+                    worker.rollback();
+                    worker.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
         }
     }
 
+    /**
+     * Add the row of parameters set on the prepared statement to its batch,
+     * the batch is sent every batchSize rows and the transaction is committed every commitEvery rows
+     *
+     * @param psInsert    prepared statement holding the parameters of the row
+     * @param rows        number of rows added so far, this row included
+     * @param commitEvery number of rows between two commits, 0 never commits
+     * @throws SQLException SQL exception
+     */
+    private void addRow(PreparedStatement psInsert, int rows, int commitEvery) throws SQLException {
+        psInsert.addBatch();
+        boolean commit = commitEvery > 0 && rows % commitEvery == 0;
+        // the pending rows are sent before a commit, so the commit holds every row added so far
+        if (rows % batchSize == 0 || commit) {
+            psInsert.executeBatch();
+        }
+        if (commit) {
+            psInsert.getConnection().commit();
+        }
+    }
+
+    /**
+     * Send the rows left in the batch of the prepared statement
+     *
+     * @param psInsert prepared statement for insertion
+     * @throws SQLException SQL exception
+     */
+    private void flush(PreparedStatement psInsert) throws SQLException {
+        psInsert.executeBatch();
+    }
+
+    /**
+     * Send the rows waiting in the batches of the streaming load,
+     * the datetime and sensor rows go first so the foreign keys of the counts find them
+     *
+     * @throws SQLException SQL exception
+     */
+    private void flushStream() throws SQLException {
+        flush(dateInsert);
+        flush(sensorInsert);
+        flush(countInsert);
+    }
+
+    /**
+     * Create the 3 tables and insert the records while the csv file is read, in batches of batchSize count rows.
+     * Only the datetime and sensor IDs seen so far are kept in memory, to insert each entity once,
+     * so the memory used does not grow with the number of count rows.
+     *
+     * @param conn  DB connection
+     * @param state statement
+     * @param path  the directory path leads to the source file
+     * @throws SQLException SQL exception
+     * @throws IOException  when reading the file fails
+     */
+    private void streamTables(Connection conn, Statement state, String path) throws SQLException, IOException {
+        for (int i = 0; i < tables.length; i++) {
+            System.err.println("Sub task: creating table " + tables[i]);
+            state.execute(sqlList[i][0]);
+            if (!deferKeys) {
+                addConstraints(state, tables[i], constraintList[i], indexList[i]);
+            }
+        }
+        long start = System.currentTimeMillis();
+        System.err.println("Sub task: streaming records from the CSV file into " + String.join(", ", tables));
+        // the tables are in the order datetime, sensor, count
+        try (PreparedStatement dates = conn.prepareStatement(sqlList[0][1]);
+             PreparedStatement sensors = conn.prepareStatement(sqlList[1][1]);
+             PreparedStatement counts = conn.prepareStatement(sqlList[2][1])) {
+            dateInsert = dates;
+            sensorInsert = sensors;
+            countInsert = counts;
+            streamedCounts = 0;
+            readCsv(path);
+            flushStream();
+        } finally {
+            dateInsert = null;
+            sensorInsert = null;
+            countInsert = null;
+        }
+        long duration = System.currentTimeMillis() - start;
+        int rows = dateIdSet.size() + sensorIdSet.size() + streamedCounts;
+        // use std_err as required
+        System.err.printf("Sub task: %d rows streamed into %s, %d into %s, %d into %s in %d milliseconds = %.0f rows/second%n",
+                dateIdSet.size(), dateTable, sensorIdSet.size(), sensorTable, streamedCounts, countTable,
+                duration, rows * 1000f / Math.max(duration, 1));
+    }
+
+    /**
+     * Write all the rows of a table to a staging file in the format read by SYSCS_UTIL.SYSCS_IMPORT_TABLE:
+     * one line per row, the columns in table order separated by commas, strings in double quotes
+     *
+     * @param table table name
+     * @param file  staging file
+     * @return number of rows written
+     * @throws IOException when writing fails
+     */
+    private int writeStaging(String table, File file) throws IOException {
+        int rows = 0;
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+            if (table.equals(dateTable)) {
+                for (DateTime date : dateTimeList) {
+                    out.write(date.getId() + "," + quote(date.getDesc()) + "," + date.getYear() + "," + date.getMonth()
+                            + "," + date.getDate() + "," + date.getDay() + "," + date.getTime() + "\n");
+                    ++rows;
+                }
+            } else if (table.equals(sensorTable)) {
+                for (Sensor sensor : sensorList) {
+                    out.write(sensor.getId() + "," + quote(sensor.getName()) + "\n");
+                    ++rows;
+                }
+            } else if (table.equals(countTable)) {
+                for (Count count : countList) {
+                    out.write(count.getId() + "," + count.getHourlyCount() + "," + count.getDateTimeId()
+                            + "," + count.getSensorId() + "\n");
+                    ++rows;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param str String column value
+     * @return the value in double quotes, a double quote inside it is doubled
+     */
+    private static String quote(String str) {
+        return '"' + str.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Load a table from a staging file with SYSCS_UTIL.SYSCS_IMPORT_TABLE,
+     * Derby reads the file itself and inserts into the empty table without binding each row
+     * important code reference:
+     * https://db.apache.org/derby/docs/10.15/ref/rrefimportproc.html
+     *
+     * @param conn  DB connection
+     * @param table table name
+     * @return number of rows imported
+     * @throws SQLException SQL exception
+     * @throws IOException  when the staging file can not be written
+     */
+    private int importTable(Connection conn, String table) throws SQLException, IOException {
+        File staging = File.createTempFile("derby-" + table.toLowerCase() + "-", ".csv");
+        try {
+            int rows = writeStaging(table, staging);
+            try (CallableStatement call = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_IMPORT_TABLE (?, ?, ?, ?, ?, ?, ?)")) {
+                // current schema, column delimiter, character delimiter, codeset, 0 = append to the empty table
+                call.setString(1, null);
+                call.setString(2, table);
+                call.setString(3, staging.getAbsolutePath());
+                call.setString(4, ",");
+                call.setString(5, "\"");
+                call.setString(6, "UTF-8");
+                call.setShort(7, (short) 0);
+                call.execute();
+            }
+            return rows;
+        } finally {
+            if (!staging.delete()) {
+                System.err.println("could not delete staging file " + staging);
+            }
+        }
+    }
+
+    /**
+     * Add the primary key, foreign keys and secondary indexes of a table
+     *
+     * @param state       statement
+     * @param table       table name
+     * @param constraints alter table statements of the table
+     * @param indexes     create index statements of the table
+     * @throws SQLException SQL exception
+     */
+    private void addConstraints(Statement state, String table, String[] constraints, String[] indexes) throws SQLException {
+        long start = System.currentTimeMillis();
+        for (String constraint : constraints) {
+            state.execute(constraint);
+        }
+        for (String index : indexes) {
+            state.execute(index);
+        }
+        long duration = System.currentTimeMillis() - start;
+        // use std_err as required
+        System.err.printf("Sub task: keys and indexes of %s built in %d milliseconds%n", table, duration);
+    }
+
     /**
      * Add all the datetime records from csv file to date list
      *
@@ -290,13 +686,20 @@ public class Derby {
      * @param date     date int
      * @param day      day int
      * @param time     time int
+     * @throws SQLException when sending a batch fails while streaming
      */
-    private void addToDateList(int dateId, String dateDesc, int year, int month, int date, int day, int time) {
-        // if data ID set does not contain dataId, then added to list
+    private void addToDateList(int dateId, String dateDesc, int year, int month, int date, int day, int time)
+            throws SQLException {
+        // if data ID set does not contain dataId, then added to list, or to the insert batch while streaming
         // usage: eliminate the duplicates
-        if (!dateIdSet.contains(dateId)) {
-            dateIdSet.add(dateId);
-            dateTimeList.add(new DateTime(dateId, dateDesc, year, month, date, day, time));
+        if (dateIdSet.add(dateId)) {
+            DateTime dateTime = new DateTime(dateId, dateDesc, year, month, date, day, time);
+            if (dateInsert != null) {
+                setDate(dateInsert, dateTime);
+                dateInsert.addBatch();
+            } else {
+                dateTimeList.add(dateTime);
+            }
         }
     }
 
@@ -307,9 +710,27 @@ public class Derby {
      * @param counts   hourly counts
      * @param dateId   datetime id
      * @param sensorId sensor id
+     * @throws SQLException when sending a batch fails while streaming
      */
-    private void addToCountList(int countId, int counts, int dateId, int sensorId) {
-        countList.add(new Count(countId, counts, dateId, sensorId));
+    private void addToCountList(int countId, int counts, int dateId, int sensorId) throws SQLException {
+        if (countInsert == null) {
+            countList.add(new Count(countId, counts, dateId, sensorId));
+            return;
+        }
+        countInsert.setInt(1, countId);
+        countInsert.setInt(2, counts);
+        countInsert.setInt(3, dateId);
+        countInsert.setInt(4, sensorId);
+        countInsert.addBatch();
+        int rows = ++streamedCounts;
+        boolean commit = commitInterval > 0 && rows % commitInterval == 0;
+        // the pending rows of the 3 tables are sent together, before a commit too
+        if (rows % batchSize == 0 || commit) {
+            flushStream();
+        }
+        if (commit) {
+            countInsert.getConnection().commit();
+        }
     }
 
     /**
@@ -317,51 +738,82 @@ public class Derby {
      *
      * @param sensorId   sensor id
      * @param sensorName sensor name
+     * @throws SQLException when sending a batch fails while streaming
      */
-    private void addToSensorList(int sensorId, String sensorName) {
-        // if sensor ID set does not contain sensorId, then added to list
+    private void addToSensorList(int sensorId, String sensorName) throws SQLException {
+        // if sensor ID set does not contain sensorId, then added to list, or to the insert batch while streaming
         // usage: eliminate the duplicates
-        if (!sensorIdSet.contains(sensorId)) {
-            sensorIdSet.add(sensorId);
-            sensorList.add(new Sensor(sensorId, sensorName));
+        if (sensorIdSet.add(sensorId)) {
+            Sensor sensor = new Sensor(sensorId, sensorName);
+            if (sensorInsert != null) {
+                setSensor(sensorInsert, sensor);
+                sensorInsert.addBatch();
+            } else {
+                sensorList.add(sensor);
+            }
         }
     }
 
     /**
      * create 3 tables and insert all the data to the Database
+     * the keys and indexes are added right after create table, or after the data in deferred and bulk import mode
      *
-     * @param conn  DB connection
-     * @param state statement
-     * @param table table name
-     * @param sql   SQL schema - create, insert, select
+     * @param conn        DB connection
+     * @param state       statement
+     * @param table       table name
+     * @param sql         SQL schema - create, insert, select
+     * @param constraints alter table statements adding the keys of the table
+     * @param indexes     create index statements of the table
+     * @throws SQLException SQL exception, the job fails as a whole
+     * @throws IOException  when the staging file of the bulk import can not be written
      */
-    private void createAndInsert(Connection conn, Statement state, String table, String[] sql) {
+    private void createAndInsert(Connection conn, Statement state, String table, String[] sql, String[] constraints,
+                                 String[] indexes) throws SQLException, IOException {
         String createSql = sql[0];
         String insertSql = sql[1];
         String querySql = sql[2];
 
         ResultSet result;
         System.err.println("Sub task: creating table " + table);
-        try {
-            // execute sql to create the table
-            state.execute(createSql);
-            PreparedStatement psInsert = conn.prepareStatement(insertSql);
-            System.err.printf("Sub task: insert records into %s%n", table);
-            // insert data into table based on the table name
-            if (table.equals(sensorTable)) {
-                insertSensors(psInsert);
-            } else if (table.equals(countTable)) {
-                insertCounts(psInsert);
-            } else if (table.equals(dateTable)) {
-                insertDates(psInsert);
-            }
-            // Release the resources
-            if (psInsert != null) {
-                psInsert.close();
+        // execute sql to create the table
+        state.execute(createSql);
+        if (!deferKeys) {
+            addConstraints(state, table, constraints, indexes);
+        }
+        long start = System.currentTimeMillis();
+        int rows = 0;
+        if (bulkImport) {
+            System.err.printf("Sub task: import records into %s from a staging file%n", table);
+            rows = importTable(conn, table);
+            long duration = System.currentTimeMillis() - start;
+            // use std_err as required
+            System.err.printf("Sub task: %d rows imported into %s in %d milliseconds = %.0f rows/second%n",
+                    rows, table, duration, rows * 1000f / Math.max(duration, 1));
+            return;
+        }
+        if (table.equals(countTable) && threads > 1) {
+            // the worker connections only see the committed tables and rows
+            conn.commit();
+            System.err.printf("Sub task: insert records into %s on %d connections%n", table, threads);
+            rows = insertCountsParallel(insertSql);
+        } else {
+            // auto closable, the statement is released when the insertion ends or fails
+            try (PreparedStatement psInsert = conn.prepareStatement(insertSql)) {
+                System.err.printf("Sub task: insert records into %s%n", table);
+                // insert data into table based on the table name
+                if (table.equals(sensorTable)) {
+                    rows = insertSensors(psInsert);
+                } else if (table.equals(countTable)) {
+                    rows = insertCounts(psInsert, countList, commitInterval);
+                } else if (table.equals(dateTable)) {
+                    rows = insertDates(psInsert);
+                }
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
         }
+        long duration = System.currentTimeMillis() - start;
+        // use std_err as required
+        System.err.printf("Sub task: %d rows inserted into %s in %d milliseconds = %.0f rows/second%n",
+                rows, table, duration, rows * 1000f / Math.max(duration, 1));
     }
 
     /**
@@ -369,12 +821,15 @@ public class Derby {
      * https://stackoverflow.com/questions/18593019/if-exists-not-recognized-in-derby
      * partial code copied and modified from assignment1.Derby installation directory Sample program WwdEmbedded.java
      * under directory: ./derby/demo/programs/workingwithderby/WwdEmbedded.java
+     *
+     * @param path csv file streamed into the tables, null to insert the lists loaded in memory
      */
-    private void importToDerby() {
+    private void importToDerby(String path) {
         String driver = "org.apache.derby.jdbc.EmbeddedDriver";
         String protocol = "jdbc:derby:";
         String dbName = "DerbyDB";
         String connectionUrl = protocol + dbName + ";create=true";
+        dbUrl = protocol + dbName;
 
         int number = tables.length;
         String table;
@@ -398,12 +853,33 @@ public class Derby {
                 dropTable(table, conn, state);
             }
             // use std_err as required
-            System.err.println("Job begins: loading data from memory into assignment1.Derby ...");
+            if (bulkImport && path == null) {
+                System.err.println("Job begins: importing data from staging files into assignment1.Derby ...");
+            } else {
+                System.err.printf("Job begins: %s into assignment1.Derby, %d rows per batch, %s%s%s ...%n",
+                        path != null ? "streaming data from the CSV file" : "loading data from memory",
+                        batchSize, commitInterval > 0 ? "commit every " + commitInterval + " rows" : "one commit at the end",
+                        deferKeys ? ", keys and indexes built after the load" : "",
+                        threads > 1 && path == null ? ", counts inserted on " + threads + " connections" : "");
+            }
             long start = System.currentTimeMillis();
-            for (int i = 0; i < number; i++) {
-                table = tables[i];
-                sql = sqlList[i];
-                createAndInsert(conn, state, table, sql);
+            if (path != null) {
+                streamTables(conn, state, path);
+            } else {
+                for (int i = 0; i < number; i++) {
+                    table = tables[i];
+                    sql = sqlList[i];
+                    createAndInsert(conn, state, table, sql, constraintList[i], indexList[i]);
+                }
+            }
+            // the keys and indexes are built once on the loaded data, parent tables first
+            if (deferKeys) {
+                long loaded = System.currentTimeMillis();
+                System.err.printf("Phase: data loaded into bare tables in %d milliseconds%n", loaded - start);
+                for (int i = 0; i < number; i++) {
+                    addConstraints(state, tables[i], constraintList[i], indexList[i]);
+                }
+                System.err.printf("Phase: keys and indexes built in %d milliseconds%n", System.currentTimeMillis() - loaded);
             }
             long end = System.currentTimeMillis();
             // calculate the total time taken for loading data into assignment1.Derby DB
@@ -459,7 +935,7 @@ public class Derby {
 
         sensorTable = "SENSOR";
         String[] sensorSql = new String[]{
-                String.format("create table %s (id int not null, name varchar(40) not null, primary key (id))", sensorTable),
+                String.format("create table %s (id int not null, name varchar(40) not null)", sensorTable),
                 String.format("insert into %s (id, name) values (?, ?)", sensorTable),
                 String.format("select id, name from %s", sensorTable)
         };
@@ -468,29 +944,49 @@ public class Derby {
         String[] dateSql = new String[]{
                 "create table " + dateTable + " (id int not null, desc_str varchar(24) not null,"
                         + " year_int int not null, month_int int not null, date_int int not null,"
-                        + " day_int int not null, time_int int not null, primary key (id))",
+                        + " day_int int not null, time_int int not null)",
                 String.format("insert into %s (id, desc_str, year_int, month_int, date_int, day_int, time_int) values (?, ?, ?, ?, ?, ?, ?)", dateTable),
                 String.format("select id, desc_str, year_int, month_int, date_int, day_int, time_int from %s", dateTable)
         };
 
         countTable = "COUNT";
-        // for count table, apply foreign key constraints reference from sensor and datetime table
         String[] countSql = new String[]{
                 String.format("create table %s (id int not null, counts int not null, dateId int not null,"
-                        + "sensorId int not null, primary key (id), foreign key (dateId) references %s (id),"
-                        + "foreign key (sensorId) references %s (id))", countTable, dateTable, sensorTable),
+                        + "sensorId int not null)", countTable),
                 String.format("insert into %s (id, counts, dateId, sensorId) values (?, ?, ?, ?)", countTable),
                 String.format("select id, counts, dateId, sensorId from %s", countTable)
         };
         tables = new String[]{dateTable, sensorTable, countTable};
         sqlList = new String[][]{dateSql, sensorSql, countSql};
+        // primary keys, for count table, apply foreign key constraints reference from sensor and datetime table
+        constraintList = new String[][]{
+                {String.format("alter table %s add constraint %s_pk primary key (id)", dateTable, dateTable)},
+                {String.format("alter table %s add constraint %s_pk primary key (id)", sensorTable, sensorTable)},
+                {String.format("alter table %s add constraint %s_pk primary key (id)", countTable, countTable),
+                        String.format("alter table %s add constraint %s_date_fk foreign key (dateId) references %s (id)",
+                                countTable, countTable, dateTable),
+                        String.format("alter table %s add constraint %s_sensor_fk foreign key (sensorId) references %s (id)",
+                                countTable, countTable, sensorTable)}
+        };
+        // Derby backs each foreign key with an index on its column, so dateId and sensorId alone are indexed already,
+        // the secondary indexes serve the lookups of a sensor over a period and of a year
+        indexList = new String[][]{
+                {String.format("create index %s_year_idx on %s (year_int, month_int)", dateTable, dateTable)},
+                {},
+                {String.format("create index %s_sensor_date_idx on %s (sensorId, dateId)", countTable, countTable)}
+        };
+
+        // rows are sent in JDBC batches of 1000 and committed once at the end unless set on the command line
+        batchSize = 1000;
+        commitInterval = 0;
+        threads = 1;
 
         // initialise the list and set containers
         // usage for set is to eliminate data duplicates
         countList = new ArrayList<>();
         dateTimeList = new ArrayList<>();
-        dateIdSet = new HashSet<>();
+        dateIdSet = new IntHashSet();
         sensorList = new ArrayList<>();
-        sensorIdSet = new HashSet<>();
+        sensorIdSet = new IntHashSet();
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package assignment1;
+
+/**
+ * Set of int keys used to eliminate duplicate datetime and sensor IDs
+ * Open addressing with linear probing over an int array, adding a key never creates an object,
+ * unlike a Set of Integer which boxes every key and holds one node per entry.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 12-April-2021
+ */
+public class IntHashSet {
+
+    private int[] keys = new int[64];
+    /** true for a bucket holding a key, a key may be 0 */
+    private boolean[] used = new boolean[64];
+    private int size = 0;
+
+    /**
+     * add a key to the set
+     *
+     * @param key key to add
+     * @return true if the key was not in the set yet
+     */
+    public boolean add(int key) {
+        int i = bucket(key);
+        if (used[i]) {
+            return false;
+        }
+        keys[i] = key;
+        used[i] = true;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @param key searched key
+     * @return true if the key is in the set
+     */
+    public boolean contains(int key) {
+        return used[bucket(key)];
+    }
+
+    /**
+     * @return number of keys in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bucket holding the key, or the empty bucket where it goes
+     */
+    private int bucket(int key) {
+        int mask = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int i = (h ^ h >>> 16) & mask;
+        while (used[i] && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        keys = new int[oldKeys.length * 2];
+        used = new boolean[keys.length];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = bucket(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                used[i] = true;
+            }
+        }
+    }
+}
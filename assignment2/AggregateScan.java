@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+/**
+ * Parallel SUM / AVG / MAX of HOURLY_COUNTS grouped by one attribute, over the whole heap file
+ * The pages are split into ranges aggregated by a fork/join pool, each range fills its own GroupTable
+ * and the tables are merged when the tasks are joined.
+ * A page is processed one column at a time: the group keys of every slot are decoded into an int array,
+ * then the counts, then both arrays are added to the table, no object is created per record.
+ * Only the group column and HOURLY_COUNTS are read, in a PAX heap file only their minipages are touched.
+ * The aggregation can be limited to a YEAR range, the pages ruled out by the page filter are not read.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class AggregateScan {
+
+    private final FileChannel channel;
+    private final MappedHeapFile heap;
+    private final PageLayout layout;
+    private final ForkJoinPool pool;
+    private final int pageCount;
+    /** bytes read from the heap file channel, 0 when reading the memory mapping */
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * @param channel heap file channel, pages are read with positioned reads which are safe from many threads
+     * @param heap    memory-mapped heap file, null to read the pages from the channel
+     * @param layout  page layout of the heap file
+     * @param pool    fork/join pool running the aggregation
+     * @throws IOException when the size of the heap file can not be read
+     */
+    public AggregateScan(FileChannel channel, MappedHeapFile heap, PageLayout layout, ForkJoinPool pool) throws IOException {
+        this.channel = channel;
+        this.heap = heap;
+        this.layout = layout;
+        this.pool = pool;
+        this.pageCount = heap != null ? heap.getPageCount() : (int) (channel.size() / layout.getPageSize());
+    }
+
+    /**
+     * Aggregate HOURLY_COUNTS of every record of the heap file
+     *
+     * @param groupBy grouping attribute
+     * @return the groups and their aggregates
+     * @throws UncheckedIOException when reading fails or a page is corrupted
+     */
+    public GroupTable aggregate(GroupBy groupBy) {
+        return aggregate(groupBy, Integer.MIN_VALUE, Integer.MAX_VALUE, pageNo -> true);
+    }
+
+    /**
+     * Aggregate HOURLY_COUNTS of the records of the heap file whose YEAR is in [fromYear, toYear]
+     *
+     * @param groupBy  grouping attribute
+     * @param fromYear first year included
+     * @param toYear   last year included
+     * @param pages    false for the page numbers which can not hold a record of the years
+     * @return the groups and their aggregates
+     * @throws UncheckedIOException when reading fails or a page is corrupted
+     */
+    public GroupTable aggregate(GroupBy groupBy, int fromYear, int toYear, IntPredicate pages) {
+        Column column = groupBy.column;
+        int[] codeKeys = new int[0];
+        Dictionary dictionary = layout.getDictionary();
+        if (column.type == 'S' && dictionary != null) {
+            // the key of each dictionary code is computed once, not once per record
+            codeKeys = new int[1 << (8 * column.codeSize)];
+            for (int code = 0; code < codeKeys.length; code++) {
+                // pad to the 3 letters read by monthNumber and dayNumber
+                codeKeys[code] = nameKey(groupBy, ByteBuffer.wrap(Arrays.copyOf(dictionary.bytes(column, code), 3)), 0);
+            }
+        }
+        Years years = new Years(fromYear, toYear, pages);
+        return pool.invoke(new AggregateTask(groupBy, codeKeys, years, HeapFile.FIRST_PAGE, pageCount));
+    }
+
+    /**
+     * @return bytes read from the heap file channel by all aggregations so far
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return group key of a MONTH or DAY name
+     */
+    private static int nameKey(GroupBy groupBy, ByteBuffer buffer, int offset) {
+        return groupBy == GroupBy.MONTH ? DbUtil.monthNumber(buffer, offset) : DbUtil.dayNumber(buffer, offset);
+    }
+
+    /**
+     * YEAR range of an aggregation and the pages which may hold it
+     */
+    private static class Years {
+        final int from;
+        final int to;
+        final IntPredicate pages;
+
+        Years(int from, int to, IntPredicate pages) {
+            this.from = from;
+            this.to = to;
+            this.pages = pages;
+        }
+
+        /**
+         * @return true if every year is aggregated, YEAR is then not read
+         */
+        boolean all() {
+            return from == Integer.MIN_VALUE && to == Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * aggregation task of the pages in [from, to)
+     */
+    private class AggregateTask extends RecursiveTask<GroupTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final GroupBy groupBy;
+        /** group key of each dictionary code of the group column */
+        private final int[] codeKeys;
+        private final Years years;
+        private final int from;
+        private final int to;
+
+        AggregateTask(GroupBy groupBy, int[] codeKeys, Years years, int from, int to) {
+            this.groupBy = groupBy;
+            this.codeKeys = codeKeys;
+            this.years = years;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected GroupTable compute() {
+            if (to - from <= ParallelScan.PAGES_PER_TASK) {
+                return aggregateRange();
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(groupBy, codeKeys, years, from, mid);
+            left.fork();
+            GroupTable right = new AggregateTask(groupBy, codeKeys, years, mid, to).compute();
+            return left.join().merge(right);
+        }
+
+        private GroupTable aggregateRange() {
+            GroupTable groups = new GroupTable();
+            Column[] columns = years.all() ? new Column[]{groupBy.column, Column.HOURLY_COUNTS}
+                    : new Column[]{groupBy.column, Column.HOURLY_COUNTS, Column.YEAR};
+            // one set of buffers per task, reused for every page of the range
+            int[] keys = new int[layout.getCapacity()];
+            int[] values = new int[layout.getCapacity()];
+            int[] yearValues = new int[layout.getCapacity()];
+            ByteBuffer buffer = heap == null ? ByteBuffer.allocate(layout.getPageSize()) : null;
+            for (int pageNo = from; pageNo < to; pageNo++) {
+                if (!years.pages.test(pageNo)) {
+                    continue;
+                }
+                ByteBuffer page = buffer;
+                try {
+                    if (heap != null) {
+                        page = heap.page(pageNo);
+                    } else {
+                        bytesRead.add(layout.read(channel, pageNo, buffer, columns));
+                    }
+                    layout.check(page, pageNo, columns);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                int count = HeapFile.recordCount(page);
+                decodeKeys(page, count, keys);
+                decodeInts(page, Column.HOURLY_COUNTS, count, values);
+                if (years.all()) {
+                    for (int slot = 0; slot < count; slot++) {
+                        groups.add(keys[slot], values[slot]);
+                    }
+                    continue;
+                }
+                decodeInts(page, Column.YEAR, count, yearValues);
+                for (int slot = 0; slot < count; slot++) {
+                    if (yearValues[slot] >= years.from && yearValues[slot] <= years.to) {
+                        groups.add(keys[slot], values[slot]);
+                    }
+                }
+            }
+            return groups;
+        }
+
+        /**
+         * decode the group key of the first count slots of the page into keys
+         */
+        private void decodeKeys(ByteBuffer page, int count, int[] keys) {
+            Column column = groupBy.column;
+            if (column.type == 'I') {
+                decodeInts(page, column, count, keys);
+                return;
+            }
+            int start = layout.position(0, column), stride = layout.stride(column);
+            if (layout.getDictionary() != null) {
+                // MONTH and DAY codes are 1 byte
+                for (int slot = 0; slot < count; slot++) {
+                    keys[slot] = codeKeys[page.get(start + slot * stride) & 0xFF];
+                }
+            } else {
+                for (int slot = 0; slot < count; slot++) {
+                    keys[slot] = nameKey(groupBy, page, start + slot * stride);
+                }
+            }
+        }
+    }
+
+    /**
+     * decode an int column of the first count slots of the page into values
+     */
+    private void decodeInts(ByteBuffer page, Column column, int count, int[] values) {
+        int start = layout.position(0, column), stride = layout.stride(column);
+        for (int slot = 0; slot < count; slot++) {
+            values[slot] = page.getInt(start + slot * stride);
+        }
+    }
+}
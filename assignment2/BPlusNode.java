@@ -2,8 +2,10 @@
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class BPlusNode<K extends Comparable<K>, V> {
     /** key list entries of current node */
@@ -312,6 +314,80 @@ public class BPlusNode<K extends Comparable<K>, V> {
         return null;
     }
 
+    /**
+     * descend from current node to the leaf node which may hold the key
+     *
+     * @param key search key
+     * @return leaf node
+     */
+    protected BPlusNode<K, V> findLeaf(K key) {
+        BPlusNode<K, V> node = this;
+        while (!node.leaf) {
+            // find the first separator greater than the key, keys equal to a separator are on its right child
+            int low = 0, high = node.entryList.size() - 1;
+            while (low <= high) {
+                int mid = low + (high - low) / 2;
+                if (key.compareTo(node.entryList.get(mid).getKey()) >= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            node = node.childrenList.get(low);
+        }
+        return node;
+    }
+
+    /**
+     * Lazily walk the leaf chain from the current leaf node through the next links
+     *
+     * @param fromKey first key included, null means from the first entry of the current leaf node
+     * @param toKey   last key included, null means until the end of the leaf chain
+     * @return the entries between fromKey and toKey, in key order
+     */
+    protected Iterator<Map.Entry<K, V>> leafEntries(K fromKey, K toKey) {
+        // skip the keys less than fromKey in the start leaf node, other leaf nodes start from index 0
+        int start = 0;
+        if (fromKey != null) {
+            int low = 0, high = entryList.size() - 1;
+            while (low <= high) {
+                int mid = low + (high - low) / 2;
+                if (entryList.get(mid).getKey().compareTo(fromKey) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            start = low;
+        }
+        final int startIdx = start;
+        return new Iterator<Map.Entry<K, V>>() {
+            private BPlusNode<K, V> node = BPlusNode.this;
+            private int idx = startIdx;
+
+            @Override
+            public boolean hasNext() {
+                while (node != null && idx >= node.entryList.size()) {
+                    node = node.next;
+                    idx = 0;
+                }
+                if (node != null && toKey != null && node.entryList.get(idx).getKey().compareTo(toKey) > 0) {
+                    // past the end of the range, stop walking
+                    node = null;
+                }
+                return node != null;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return node.entryList.get(idx++);
+            }
+        };
+    }
+
     /**
      * print B+ tree in console
      * @param index tree's level
@@ -1,4 +1,7 @@
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 public class BPlusTree<K extends Comparable<K>, V> {
     /** root node */
@@ -50,4 +53,15 @@ public class BPlusTree<K extends Comparable<K>, V> {
     public BPlusNode<K,V> getLeafHead(){
         return leafHead;
     }
-}
\ No newline at end of file
+
+    /**
+     * Range scan, one descent to the leaf node of fromKey then walking the next links of the leaf nodes
+     *
+     * @param fromKey first key included
+     * @param toKey   last key included
+     * @return lazy iterator over the entries between fromKey and toKey, in key order
+     */
+    public Iterator<Map.Entry<K, V>> range(K fromKey, K toKey) {
+        return root.findLeaf(fromKey).leafEntries(fromKey, toKey);
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Per-page Bloom filters of the ID and SDT_NAME keys of a heap file, e.g. heap.40960.bloom
+ * A point lookup probes the filter of every page and reads only the pages which may hold the key,
+ * a false positive costs one page read, a false negative never happens.
+ * The keys are the ones of the index files, see IndexKey.ID and IndexKey.SDT_NAME.
+ * <p>
+ * Each page has a split block Bloom filter of the same number of 32 bytes blocks: a key picks one block
+ * and sets one bit in each of its 8 ints, so a probe touches one cache line. BITS_PER_KEY bits per key
+ * keep the false positive rate under 1%, about 3 bytes per record for both keys against 2 B+ tree entries.
+ * <p>
+ * magic | version | page count | record count (long) | blocks per page
+ * | for each data page: blocks per page * 8 ints
+ * The page and record counts are the ones of the heap file header, a filter file not matching them is rebuilt.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class BloomFilter {
+
+    static final int MAGIC = 0x44424C4D;
+    static final int VERSION = 1;
+
+    /** keys of the filters */
+    static final IndexKey[] KEYS = {IndexKey.ID, IndexKey.SDT_NAME};
+
+    static final int BITS_PER_KEY = 12;
+
+    /** ints of one block, one bit is set in each */
+    private static final int BLOCK_INTS = 8;
+    private static final int BLOCK_BITS = BLOCK_INTS * Integer.SIZE;
+
+    /** odd constants picking the bit of a key in each int of its block */
+    private static final int[] SALTS = {0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+            0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31};
+
+    private static final int HEADER_SIZE = 24;
+
+    /** number of pages in the heap file, header page included */
+    private final int pageCount;
+    private final long recordCount;
+    private final int blocksPerPage;
+    /** filters of the data pages, from HeapFile.FIRST_PAGE */
+    private final int[] bits;
+
+    /**
+     * @param pageCount     number of pages in the heap file, header page included
+     * @param recordCount   number of records in the heap file
+     * @param blocksPerPage number of blocks of the filter of one page
+     * @param bits          filters of the data pages
+     */
+    public BloomFilter(int pageCount, long recordCount, int blocksPerPage, int[] bits) {
+        this.pageCount = pageCount;
+        this.recordCount = recordCount;
+        this.blocksPerPage = blocksPerPage;
+        this.bits = bits;
+    }
+
+    /**
+     * @param layout page layout of the heap file
+     * @return number of blocks of the filter of one page holding a full page of keys
+     */
+    static int blocksPerPage(PageLayout layout) {
+        long keyBits = (long) KEYS.length * layout.getCapacity() * BITS_PER_KEY;
+        return (int) Math.max((keyBits + BLOCK_BITS - 1) / BLOCK_BITS, 1);
+    }
+
+    /**
+     * @return 64 bits hash of the key, the index key is mixed in so an ID and a SDT_NAME key never collide by design
+     */
+    private static long hash(IndexKey indexKey, long key) {
+        // finalizer of SplitMix64
+        long h = key + 0x9E3779B97F4A7C15L * (indexKey.ordinal() + 1);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * @return first int of the block of the key in the filter of the page
+     */
+    private static int block(long h, int blocksPerPage, int pageOffset) {
+        // the high 32 bits pick the block, the low 32 bits pick the bits
+        return pageOffset + (int) (((h >>> 32) * blocksPerPage) >>> 32) * BLOCK_INTS;
+    }
+
+    /**
+     * add a key to the filter of one page
+     *
+     * @param bits          filters of the data pages
+     * @param pageOffset    first int of the filter of the page
+     * @param blocksPerPage number of blocks of the filter of one page
+     * @param indexKey      ID or SDT_NAME
+     * @param key           key of a record of the page
+     */
+    static void add(int[] bits, int pageOffset, int blocksPerPage, IndexKey indexKey, long key) {
+        long h = hash(indexKey, key);
+        int block = block(h, blocksPerPage, pageOffset);
+        for (int i = 0; i < BLOCK_INTS; i++) {
+            bits[block + i] |= 1 << (((int) h * SALTS[i]) >>> 27);
+        }
+    }
+
+    /**
+     * @param pageNo   page number of a data page
+     * @param indexKey ID or SDT_NAME
+     * @param key      searched key
+     * @return false if no record of the page has the key,
+     * true if some may have it or the filters do not know the page
+     */
+    public boolean mayContain(int pageNo, IndexKey indexKey, long key) {
+        int pageOffset = (pageNo - HeapFile.FIRST_PAGE) * blocksPerPage * BLOCK_INTS;
+        if (pageNo < HeapFile.FIRST_PAGE || pageOffset >= bits.length) {
+            return true;
+        }
+        long h = hash(indexKey, key);
+        int block = block(h, blocksPerPage, pageOffset);
+        for (int i = 0; i < BLOCK_INTS; i++) {
+            if ((bits[block + i] & (1 << (((int) h * SALTS[i]) >>> 27))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * write the filter file
+     *
+     * @param path filter file path
+     * @throws IOException when writing fails
+     */
+    void write(String path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES * bits.length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(pageCount).putLong(recordCount).putInt(blocksPerPage);
+        buffer.asIntBuffer().put(bits);
+        buffer.clear();
+        try (FileChannel out = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Read the filter file of a heap file
+     *
+     * @param path   filter file path
+     * @param header file header of the heap file
+     * @return filters of the heap file
+     * @throws IOException when the file can not be read or does not belong to the heap file
+     */
+    static BloomFilter read(String path, HeapFile.Header header) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            int blocksPerPage = blocksPerPage(header.pageLayout());
+            int intCount = (header.pageCount - HeapFile.FIRST_PAGE) * blocksPerPage * BLOCK_INTS;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES * intCount);
+            boolean valid = in.size() == buffer.capacity();
+            if (valid) {
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) == -1) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                valid = buffer.remaining() == buffer.capacity() && buffer.getInt() == MAGIC && buffer.getInt() == VERSION
+                        && buffer.getInt() == header.pageCount && buffer.getLong() == header.recordCount
+                        && buffer.getInt() == blocksPerPage;
+            }
+            if (!valid) {
+                throw new IOException("Bloom filter " + path + " does not match the heap file");
+            }
+            int[] bits = new int[intCount];
+            buffer.asIntBuffer().get(bits);
+            return new BloomFilter(header.pageCount, header.recordCount, blocksPerPage, bits);
+        }
+    }
+
+    /**
+     * Build the filter file of a heap file, the heap file is scanned once on the columns of the keys
+     *
+     * @param heapFile heap file path
+     * @throws IOException when reading or writing fails or a page is corrupted
+     */
+    static void build(String heapFile) throws IOException {
+        BloomFilter filter;
+        try (FileChannel heap = FileChannel.open(Paths.get(heapFile), StandardOpenOption.READ)) {
+            HeapFile.Header header = HeapFile.readHeader(heap);
+            PageLayout layout = header.pageLayout();
+            ByteBuffer page = ByteBuffer.allocate(layout.getPageSize());
+            RecordView record = new RecordView(layout);
+            // columns of the ID key and of the SDT_NAME key
+            Column[] columns = {Column.ID, Column.SENSOR_ID, Column.YEAR, Column.MONTH, Column.M_DATE, Column.TIME};
+            int blocksPerPage = blocksPerPage(layout);
+            int[] bits = new int[(header.pageCount - HeapFile.FIRST_PAGE) * blocksPerPage * BLOCK_INTS];
+            for (int pageNo = HeapFile.FIRST_PAGE; pageNo < header.pageCount; pageNo++) {
+                layout.read(heap, pageNo, page, columns);
+                layout.check(page, pageNo, columns);
+                addPage(record, page, bits, (pageNo - HeapFile.FIRST_PAGE) * blocksPerPage * BLOCK_INTS, blocksPerPage);
+            }
+            filter = new BloomFilter(header.pageCount, header.recordCount, blocksPerPage, bits);
+        }
+        filter.write(path(heapFile));
+    }
+
+    /**
+     * add the keys of every record of one heap page, kept out of the page loop of build
+     * so the JIT compiles this small loop on its own
+     */
+    private static void addPage(RecordView record, ByteBuffer page, int[] bits, int pageOffset, int blocksPerPage) {
+        int count = HeapFile.recordCount(page);
+        for (int slot = 0; slot < count; slot++) {
+            record.wrap(page, slot);
+            for (IndexKey indexKey : KEYS) {
+                add(bits, pageOffset, blocksPerPage, indexKey, indexKey.extract(record));
+            }
+        }
+    }
+
+    /**
+     * get the filter file name for the given heap file, e.g. heap.40960 -> heap.40960.bloom
+     *
+     * @param heapFile heap file path
+     * @return filter file path
+     */
+    static String path(String heapFile) {
+        return heapFile + ".bloom";
+    }
+}
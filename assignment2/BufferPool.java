@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared buffer pool of page-size frames for heap and index files
+ * A file is registered once and gets a file id, a page is identified by (file id, page number).
+ * A pinned page stays in its frame until it is unpinned, unpinned frames are reused with the CLOCK algorithm:
+ * the clock hand sweeps the frames, a referenced frame gets a second chance, the first frame
+ * neither pinned nor referenced is evicted. Pages are written through: write updates the file and the frame
+ * holding the page at once, so an evicted page is never written back.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class BufferPool {
+
+    /** default number of frames, 256 frames of 40960 bytes = 10MB */
+    static final int DEFAULT_FRAME_COUNT = 256;
+
+    /** page key of an empty frame */
+    private static final long EMPTY = -1L;
+
+    private final int pageSize;
+    private final ByteBuffer[] frames;
+    /** page key held by each frame, see pageKey */
+    private final long[] frameKeys;
+    private final int[] pinCounts;
+    /** reference bit of each frame, set on every pin and cleared by the clock hand */
+    private final boolean[] referenced;
+    /** page key -> frame */
+    private final Map<Long, Integer> pageTable = new HashMap<>();
+    /** registered files, the file id is the index in the list */
+    private final List<FileChannel> files = new ArrayList<>();
+    private int clockHand = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param frameCount number of frames
+     * @param pageSize   size of each frame, the page size of every registered file
+     */
+    public BufferPool(int frameCount, int pageSize) {
+        if (frameCount < 1) {
+            System.out.print("The number of buffer pool frames must be greater than 0");
+            System.exit(1);
+        }
+        this.pageSize = pageSize;
+        frames = new ByteBuffer[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = ByteBuffer.allocate(pageSize);
+        }
+        frameKeys = new long[frameCount];
+        Arrays.fill(frameKeys, EMPTY);
+        pinCounts = new int[frameCount];
+        referenced = new boolean[frameCount];
+    }
+
+    /**
+     * register a file whose pages are read through the buffer pool
+     *
+     * @param channel file channel opened for reading, and writing if its pages are written, it is not closed by the buffer pool
+     * @return file id used to pin the pages of the file
+     */
+    public synchronized int register(FileChannel channel) {
+        files.add(channel);
+        return files.size() - 1;
+    }
+
+    private static long pageKey(int fileId, int pageNo) {
+        return (long) fileId << 32 | (pageNo & 0xFFFFFFFFL);
+    }
+
+    /**
+     * pin a page in the buffer pool, the page is read from the file if it is not in a frame
+     * every pin must be followed by an unpin of the same page
+     *
+     * @param fileId file id from register
+     * @param pageNo page number
+     * @return read-only view of the frame holding the page, position 0 is the first byte of the page
+     * @throws IOException when reading fails or every frame is pinned
+     */
+    public synchronized ByteBuffer pin(int fileId, int pageNo) throws IOException {
+        long key = pageKey(fileId, pageNo);
+        Integer frame = pageTable.get(key);
+        if (frame != null) {
+            ++hits;
+        } else {
+            ++misses;
+            frame = victim();
+            if (frameKeys[frame] != EMPTY) {
+                pageTable.remove(frameKeys[frame]);
+                frameKeys[frame] = EMPTY;
+            }
+            load(files.get(fileId), pageNo, frames[frame]);
+            frameKeys[frame] = key;
+            pageTable.put(key, frame);
+        }
+        ++pinCounts[frame];
+        referenced[frame] = true;
+        return frames[frame].asReadOnlyBuffer();
+    }
+
+    /**
+     * release a page pinned by pin, the frame can be reused when its pin count drops to 0
+     *
+     * @param fileId file id from register
+     * @param pageNo page number
+     */
+    public synchronized void unpin(int fileId, int pageNo) {
+        Integer frame = pageTable.get(pageKey(fileId, pageNo));
+        if (frame == null || pinCounts[frame] == 0) {
+            throw new IllegalStateException("page " + pageNo + " of file " + fileId + " is not pinned");
+        }
+        --pinCounts[frame];
+    }
+
+    /**
+     * copy a page into the given buffer, the page is pinned only while it is copied
+     *
+     * @param fileId file id from register
+     * @param pageNo page number
+     * @param buffer page-size buffer
+     * @throws IOException when reading fails or every frame is pinned
+     */
+    public synchronized void read(int fileId, int pageNo, ByteBuffer buffer) throws IOException {
+        ByteBuffer page = pin(fileId, pageNo);
+        buffer.clear();
+        buffer.put(page);
+        buffer.clear();
+        unpin(fileId, pageNo);
+    }
+
+    /**
+     * write a page to the file, the frame holding the page is updated so the next reads see the new content
+     *
+     * @param fileId file id from register
+     * @param pageNo page number
+     * @param buffer page-size buffer
+     * @throws IOException when writing fails
+     */
+    public synchronized void write(int fileId, int pageNo, ByteBuffer buffer) throws IOException {
+        FileChannel channel = files.get(fileId);
+        buffer.clear();
+        long pos = (long) pageNo * pageSize;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+        buffer.clear();
+        Integer frame = pageTable.get(pageKey(fileId, pageNo));
+        if (frame != null) {
+            frames[frame].clear();
+            frames[frame].put(buffer);
+            frames[frame].clear();
+            buffer.clear();
+        }
+    }
+
+    /**
+     * sweep the clock hand to find a frame to reuse
+     *
+     * @return frame which is neither pinned nor recently referenced
+     * @throws IOException when every frame is pinned
+     */
+    private int victim() throws IOException {
+        // two rounds: the first round may only clear reference bits
+        for (int i = 0; i < 2 * frames.length; i++) {
+            int frame = clockHand;
+            clockHand = (clockHand + 1) % frames.length;
+            if (pinCounts[frame] > 0) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            return frame;
+        }
+        throw new IOException("all " + frames.length + " buffer pool frames are pinned");
+    }
+
+    /**
+     * read one page of the file into the frame, bytes past the end of the file are zero
+     */
+    private void load(FileChannel channel, int pageNo, ByteBuffer frame) throws IOException {
+        frame.clear();
+        long pos = (long) pageNo * pageSize;
+        while (frame.hasRemaining()) {
+            if (channel.read(frame, pos + frame.position()) == -1) {
+                break;
+            }
+        }
+        while (frame.hasRemaining()) {
+            frame.put((byte) 0);
+        }
+        frame.clear();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Columns of the record in field order, the schema saved in the heap file header
+ * type 'I' is a 4 bytes int, type 'S' is a String padded with 0 to its size.
+ * A dictionary-encoded heap file stores each column with its code type instead:
+ * 'T' a packed date time (int seconds since 1970-01-01 00:00), 'D' a 1 or 2 bytes code of the per-file dictionary,
+ * 'V' a virtual column of 0 bytes derived from other columns.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public enum Column {
+    ID('I', Record.ID_OFFSET, Record.INT_SIZE, 'I', Record.INT_SIZE),
+    DATE_TIME('S', Record.DATE_TIME_OFFSET, Record.DATE_TIME_SIZE, 'T', Record.INT_SIZE),
+    YEAR('I', Record.YEAR_OFFSET, Record.INT_SIZE, 'I', Record.INT_SIZE),
+    MONTH('S', Record.MONTH_OFFSET, Record.MONTH_SIZE, 'D', 1),
+    M_DATE('I', Record.M_DATE_OFFSET, Record.INT_SIZE, 'I', Record.INT_SIZE),
+    DAY('S', Record.DAY_OFFSET, Record.DAY_SIZE, 'D', 1),
+    TIME('I', Record.TIME_OFFSET, Record.INT_SIZE, 'I', Record.INT_SIZE),
+    SENSOR_ID('I', Record.SENSOR_ID_OFFSET, Record.INT_SIZE, 'I', Record.INT_SIZE),
+    SENSOR_NAME('S', Record.SENSOR_NAME_OFFSET, Record.SENSOR_NAME_SIZE, 'D', 2),
+    HOURLY_COUNTS('I', Record.HOURLY_COUNTS_OFFSET, Record.INT_SIZE, 'I', Record.INT_SIZE),
+    // SENSOR_ID + DATE_TIME
+    SDT_NAME('S', Record.SDT_NAME_OFFSET, Record.SDT_NAME_SIZE, 'V', 0);
+
+    /** all columns, values() creates a new array on every call */
+    static final Column[] ALL = values();
+
+    /** 'I' int or 'S' String */
+    final char type;
+    /** offset of the column in a row of the row layout */
+    final int offset;
+    /** number of bytes of one value */
+    final int size;
+    /** type and number of bytes of one value in a dictionary-encoded heap file */
+    final char codeType;
+    final int codeSize;
+
+    Column(char type, int offset, int size, char codeType, int codeSize) {
+        this.type = type;
+        this.offset = offset;
+        this.size = size;
+        this.codeType = codeType;
+        this.codeSize = codeSize;
+    }
+}
@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable byte-level csv tokenizer
+ * Works on a window of a byte array, e.g. a chunk of lines, or on an input stream read through an internal buffer.
+ * nextLine only records where each field starts and ends, ints are parsed straight from the bytes and
+ * String attributes are copied into a page buffer without creating a String.
+ * A field starting with a double quote may hold commas and line breaks, a doubled quote inside it is one quote,
+ * e.g. "Town Hall, West" or "The ""Walk""". Empty lines are skipped.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class CsvTokenizer {
+
+    private static final byte COMMA = ',';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    /** input stream in stream mode, null in window mode */
+    private final InputStream in;
+    private byte[] data;
+    /** next byte to read and end of the valid bytes */
+    private int pos, limit;
+    /** true when the input stream is exhausted */
+    private boolean eof;
+
+    /** start and end (exclusive) of each field of the current line, quotes excluded */
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    /** true if the field holds doubled quotes which must be unescaped */
+    private boolean[] escaped = new boolean[16];
+    private int fieldCount;
+
+    /**
+     * tokenizer in window mode, the bytes are given by reset
+     */
+    public CsvTokenizer() {
+        in = null;
+        eof = true;
+    }
+
+    /**
+     * tokenizer in stream mode, the stream is read in blocks, it is not closed by the tokenizer
+     *
+     * @param in csv input stream
+     */
+    public CsvTokenizer(InputStream in) {
+        this.in = in;
+        data = new byte[1 << 16];
+    }
+
+    /**
+     * tokenize a new window of bytes in window mode
+     *
+     * @param bytes  byte array, not copied
+     * @param offset starting point of the window
+     * @param length number of bytes of the window
+     * @return this tokenizer
+     */
+    public CsvTokenizer reset(byte[] bytes, int offset, int length) {
+        data = bytes;
+        pos = offset;
+        limit = offset + length;
+        fieldCount = 0;
+        return this;
+    }
+
+    /**
+     * move to the next non-empty line and find its fields
+     *
+     * @return false when there is no more line
+     * @throws IOException when reading the stream fails
+     */
+    public boolean nextLine() throws IOException {
+        while (true) {
+            int end = scanLine(pos);
+            if (end < 0) {
+                // the line is not complete in the buffer, read more bytes and scan it again
+                if (fill()) {
+                    continue;
+                }
+                end = limit;
+            }
+            boolean empty = end == pos;
+            pos = end;
+            if (!empty && !(fieldCount == 1 && starts[0] == ends[0])) {
+                return true;
+            }
+            if (pos >= limit && !fill()) {
+                fieldCount = 0;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * find the fields of the line starting at begin
+     *
+     * @param begin starting point of the line
+     * @return starting point of the next line, -1 if the line does not end before the end of the buffer
+     * and more bytes may follow
+     */
+    private int scanLine(int begin) {
+        int p = begin;
+        fieldCount = 0;
+        while (true) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+                escaped = Arrays.copyOf(escaped, fieldCount * 2);
+            }
+            boolean doubled = false;
+            int start, end;
+            if (p < limit && data[p] == QUOTE) {
+                // quoted field, runs to the closing quote
+                start = ++p;
+                while (true) {
+                    if (p >= limit) {
+                        return eof ? finishQuoted(start, doubled) : -1;
+                    }
+                    if (data[p] == QUOTE) {
+                        if (p + 1 >= limit && !eof) {
+                            return -1;
+                        }
+                        if (p + 1 < limit && data[p + 1] == QUOTE) {
+                            doubled = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    ++p;
+                }
+                end = p++;
+                // anything between the closing quote and the separator is ignored
+                while (p < limit && data[p] != COMMA && data[p] != LF) {
+                    ++p;
+                }
+            } else {
+                start = p;
+                while (p < limit && data[p] != COMMA && data[p] != LF) {
+                    ++p;
+                }
+                end = p;
+            }
+            if (p >= limit && !eof) {
+                return -1;
+            }
+            if (p >= limit || data[p] == LF) {
+                // strip the carriage return of windows line breaks
+                if (end > start && data[end - 1] == CR && (p >= limit || data[p] == LF) && end == p) {
+                    --end;
+                }
+                addField(start, end, doubled);
+                return p >= limit ? limit : p + 1;
+            }
+            addField(start, end, doubled);
+            // skip the comma
+            ++p;
+        }
+    }
+
+    private int finishQuoted(int start, boolean doubled) {
+        // an unterminated quote runs to the end of the input
+        addField(start, limit, doubled);
+        return limit;
+    }
+
+    private void addField(int start, int end, boolean doubled) {
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = doubled;
+        ++fieldCount;
+    }
+
+    /**
+     * read more bytes of the stream, the unread bytes are moved to the front of the buffer,
+     * the buffer grows when a single line does not fit in it
+     *
+     * @return false in window mode or when the stream is exhausted
+     * @throws IOException when reading fails
+     */
+    private boolean fill() throws IOException {
+        if (in == null || eof) {
+            return false;
+        }
+        int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(data, pos, data, 0, remaining);
+        } else if (remaining == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        pos = 0;
+        limit = remaining;
+        int n = in.read(data, limit, data.length - limit);
+        if (n == -1) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of fields of the current line
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    private void checkField(int field) {
+        if (field >= fieldCount) {
+            throw new IndexOutOfBoundsException("field " + field + " of a line with " + fieldCount + " fields");
+        }
+    }
+
+    /**
+     * parse an int straight from the bytes of the field, spaces around the number are ignored
+     *
+     * @param field field index
+     * @return int number
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getInt(int field) {
+        checkField(field);
+        int p = starts[field], end = ends[field];
+        while (p < end && data[p] == ' ') {
+            ++p;
+        }
+        while (end > p && data[end - 1] == ' ') {
+            --end;
+        }
+        boolean negative = p < end && data[p] == '-';
+        if (negative || (p < end && data[p] == '+')) {
+            ++p;
+        }
+        if (p == end) {
+            throw new NumberFormatException("empty int field " + field);
+        }
+        // accumulate as a negative number so Integer.MIN_VALUE can be parsed
+        int value = 0;
+        for (; p < end; p++) {
+            int digit = data[p] - '0';
+            if (digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("invalid int field " + field + ": " + getString(field));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Integer.MIN_VALUE) {
+            throw new NumberFormatException("invalid int field " + field + ": " + getString(field));
+        }
+        return negative ? value : -value;
+    }
+
+    /**
+     * @param field field index
+     * @return field as a new String, quotes removed
+     */
+    public String getString(int field) {
+        checkField(field);
+        if (!escaped[field]) {
+            return new String(data, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[ends[field] - starts[field]];
+        int len = unescape(field, bytes);
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param field field index
+     * @return number of bytes of the field, quotes removed
+     */
+    public int length(int field) {
+        checkField(field);
+        if (!escaped[field]) {
+            return ends[field] - starts[field];
+        }
+        int len = 0;
+        for (int p = starts[field]; p < ends[field]; p++, len++) {
+            if (data[p] == QUOTE) {
+                ++p;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * copy the bytes of the field into the buffer at its position, no String is created
+     *
+     * @param field  field index
+     * @param buffer byte buffer where data is loading to
+     * @param max    maximum number of bytes to copy, the rest of the field is cut
+     * @return number of bytes copied
+     */
+    public int copyTo(int field, ByteBuffer buffer, int max) {
+        checkField(field);
+        if (!escaped[field]) {
+            int len = Math.min(ends[field] - starts[field], max);
+            buffer.put(data, starts[field], len);
+            return len;
+        }
+        int len = 0;
+        for (int p = starts[field]; p < ends[field] && len < max; p++, len++) {
+            buffer.put(data[p]);
+            if (data[p] == QUOTE) {
+                ++p;
+            }
+        }
+        return len;
+    }
+
+    private int unescape(int field, byte[] bytes) {
+        int len = 0;
+        for (int p = starts[field]; p < ends[field]; p++) {
+            bytes[len++] = data[p];
+            if (data[p] == QUOTE) {
+                ++p;
+            }
+        }
+        return len;
+    }
+}
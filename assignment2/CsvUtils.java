@@ -1,15 +1,13 @@
 
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 public class CsvUtils {
 
-    private static final String COMMA = ",";
-
     /**
      * read date from csv file and store as Count Object
      * @param csvFile csv file
@@ -22,30 +20,23 @@ public class CsvUtils {
         int idIdx = 0, dateTimeIdx = 1, yearIdx = 2, monthIdx = 3, mDateIdx = 4, dayIdx = 5;
         int timeIdx = 6, sensorIdIdx = 7, sensorNameIdx = 8, hourlyCountsIdx = 9;
 
-        //parsing a CSV file into BufferedReader class constructor
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
-            boolean isHeader = true;
-            // marking start time when loading begins
-            String line;
-            while ((line = br.readLine()) != null) {
-                // skip header from writing
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
+        //parsing a CSV file with the byte-level tokenizer, ints are parsed without creating a String
+        try (InputStream in = new FileInputStream(csvFile)) {
+            CsvTokenizer record = new CsvTokenizer(in);
+            // skip header from reading
+            record.nextLine();
+            while (record.nextLine()) {
                 Count countObj = new Count();
-                // split each record as a String array
-                String[] record = line.split(COMMA);
-                countObj.id = Integer.parseInt(record[idIdx]);
-                countObj.dateTime = record[dateTimeIdx];
-                countObj.year = Integer.parseInt(record[yearIdx]);
-                countObj.month = record[monthIdx];
-                countObj.mDate = Integer.parseInt(record[mDateIdx]);
-                countObj.day = record[dayIdx];
-                countObj.time = Integer.parseInt(record[timeIdx]);
-                countObj.sensorId = Integer.parseInt(record[sensorIdIdx]);
-                countObj.sensorName = record[sensorNameIdx];
-                countObj.hourlyCounts = Integer.parseInt(record[hourlyCountsIdx]);
+                countObj.id = record.getInt(idIdx);
+                countObj.dateTime = record.getString(dateTimeIdx);
+                countObj.year = record.getInt(yearIdx);
+                countObj.month = record.getString(monthIdx);
+                countObj.mDate = record.getInt(mDateIdx);
+                countObj.day = record.getString(dayIdx);
+                countObj.time = record.getInt(timeIdx);
+                countObj.sensorId = record.getInt(sensorIdIdx);
+                countObj.sensorName = record.getString(sensorNameIdx);
+                countObj.hourlyCounts = record.getInt(hourlyCountsIdx);
                 countList.add(countObj);
                 if(lines != -1 && countList.size() >= lines){
                     break;
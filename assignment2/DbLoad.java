@@ -1,12 +1,21 @@
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Load data into heap.size file
@@ -50,101 +59,232 @@ public class DbLoad {
     }
 
     /**
-     * Load each attribute in the record into fix-size block of the buffer
+     * Load each attribute in the record into its fix-size block of the page, placed by the page layout
+     * ints are parsed straight from the csv bytes and String attributes are copied as bytes, no String is created
+     * the page is zeroed beforehand, so the rest of a String block is left as 0
      * important - code reference:
      * https://www.baeldung.com/java-string-to-byte-array
      *
-     * @param record an array of String for all attributes of the record
+     * @param record tokenizer positioned on the line of the record
      * @param buffer byte buffer for data written
+     * @param page   starting point of the page in the buffer
+     * @param slot   slot of the record in the page
+     * @param layout page layout of the heap file
      */
-    static private void recordToBuffer(String[] record, ByteBuffer buffer) {
-        Charset charset = StandardCharsets.UTF_8;
-
-        // header in the csv file
-        int id, year, mDate, time, sensorId, hourlyCounts;
-        String dateTime, month, day, sensorName;
-        // new field SDT_NAME: Sensor_ID + DATE_TIME as String
-        String sdtName;
+    static private void recordToBuffer(CsvTokenizer record, ByteBuffer buffer, int page, int slot, PageLayout layout) {
         // column index in the csv file
         int idIdx = 0, dateTimeIdx = 1, yearIdx = 2, monthIdx = 3, mDateIdx = 4, dayIdx = 5;
         int timeIdx = 6, sensorIdIdx = 7, sensorNameIdx = 8, hourlyCountsIdx = 9;
-        // toInt converts string-number to integer
-        id = DbUtil.toInt(record[idIdx]);
-        dateTime = record[dateTimeIdx];
-        year = DbUtil.toInt(record[yearIdx]);
-        month = record[monthIdx];
-        mDate = DbUtil.toInt(record[mDateIdx]);
-        day = record[dayIdx];
-        time = DbUtil.toInt(record[timeIdx]);
-        sensorId = DbUtil.toInt(record[sensorIdIdx]);
-        sensorName = record[sensorNameIdx];
-        hourlyCounts = DbUtil.toInt(record[hourlyCountsIdx]);
-        sdtName = record[sensorIdIdx] + dateTime;
 
-        // put id as a byte array into buffer, 0 means start from beginning, total length is 4 bytes
-        buffer.put(DbUtil.intToBytes(id), 0, Record.INT_SIZE);
-        buffer.put(dateTime.getBytes(charset), 0, dateTime.length());
+        buffer.putInt(page + layout.position(slot, Column.ID), record.getInt(idIdx));
+        record.copyTo(dateTimeIdx, buffer.position(page + layout.position(slot, Column.DATE_TIME)), Record.DATE_TIME_SIZE);
+        buffer.putInt(page + layout.position(slot, Column.YEAR), record.getInt(yearIdx));
+        record.copyTo(monthIdx, buffer.position(page + layout.position(slot, Column.MONTH)), Record.MONTH_SIZE);
+        buffer.putInt(page + layout.position(slot, Column.M_DATE), record.getInt(mDateIdx));
+        record.copyTo(dayIdx, buffer.position(page + layout.position(slot, Column.DAY)), Record.DAY_SIZE);
+        buffer.putInt(page + layout.position(slot, Column.TIME), record.getInt(timeIdx));
+        buffer.putInt(page + layout.position(slot, Column.SENSOR_ID), record.getInt(sensorIdIdx));
+        record.copyTo(sensorNameIdx, buffer.position(page + layout.position(slot, Column.SENSOR_NAME)), Record.SENSOR_NAME_SIZE);
+        buffer.putInt(page + layout.position(slot, Column.HOURLY_COUNTS), record.getInt(hourlyCountsIdx));
+        // new field SDT_NAME: Sensor_ID + DATE_TIME, copied from the two csv fields
+        buffer.position(page + layout.position(slot, Column.SDT_NAME));
+        int sdtSize = record.copyTo(sensorIdIdx, buffer, Record.SDT_NAME_SIZE);
+        record.copyTo(dateTimeIdx, buffer, Record.SDT_NAME_SIZE - sdtSize);
+    }
 
-        // size for date_time may be vary, reset any remaining slot allocated to DATE_TIME field to 0
-        clearRemainingSlot(buffer, dateTime.length(), Record.DATE_TIME_SIZE);
+    /**
+     * Load each attribute in the record into its block of the page in a dictionary-encoded heap file
+     * MONTH, DAY and SENSOR_NAME are replaced by their dictionary codes, DATE_TIME is packed into an int,
+     * and SDT_NAME is not stored, it is derived from SENSOR_ID and DATE_TIME when read
+     *
+     * @param record  tokenizer positioned on the line of the record
+     * @param buffer  byte buffer for data written
+     * @param page    starting point of the page in the buffer
+     * @param slot    slot of the record in the page
+     * @param layout  page layout of the heap file
+     * @param scratch buffer holding the bytes of one String attribute
+     * @param codes   dictionary cache of the worker
+     * @throws IOException when a dictionary is full
+     */
+    static private void recordToCodes(CsvTokenizer record, ByteBuffer buffer, int page, int slot, PageLayout layout,
+                                      ByteBuffer scratch, Dictionary.Cache codes) throws IOException {
+        // column index in the csv file
+        int idIdx = 0, dateTimeIdx = 1, yearIdx = 2, monthIdx = 3, mDateIdx = 4, dayIdx = 5;
+        int timeIdx = 6, sensorIdIdx = 7, sensorNameIdx = 8, hourlyCountsIdx = 9;
+        byte[] bytes = scratch.array();
 
-        buffer.put(DbUtil.intToBytes(year), 0, Record.INT_SIZE);
-        buffer.put(month.getBytes(charset), 0, month.length());
+        buffer.putInt(page + layout.position(slot, Column.ID), record.getInt(idIdx));
+        int len = record.copyTo(dateTimeIdx, scratch.clear(), Record.DATE_TIME_SIZE);
+        buffer.putInt(page + layout.position(slot, Column.DATE_TIME), DbUtil.packDateTime(bytes, 0, len));
+        buffer.putInt(page + layout.position(slot, Column.YEAR), record.getInt(yearIdx));
+        len = record.copyTo(monthIdx, scratch.clear(), Record.MONTH_SIZE);
+        buffer.put(page + layout.position(slot, Column.MONTH), (byte) codes.code(Column.MONTH, bytes, len));
+        buffer.putInt(page + layout.position(slot, Column.M_DATE), record.getInt(mDateIdx));
+        len = record.copyTo(dayIdx, scratch.clear(), Record.DAY_SIZE);
+        buffer.put(page + layout.position(slot, Column.DAY), (byte) codes.code(Column.DAY, bytes, len));
+        buffer.putInt(page + layout.position(slot, Column.TIME), record.getInt(timeIdx));
+        buffer.putInt(page + layout.position(slot, Column.SENSOR_ID), record.getInt(sensorIdIdx));
+        len = record.copyTo(sensorNameIdx, scratch.clear(), Record.SENSOR_NAME_SIZE);
+        buffer.putShort(page + layout.position(slot, Column.SENSOR_NAME), (short) codes.code(Column.SENSOR_NAME, bytes, len));
+        buffer.putInt(page + layout.position(slot, Column.HOURLY_COUNTS), record.getInt(hourlyCountsIdx));
+    }
 
-        // size for month may be vary, reset any remaining slot allocated to MONTH field to 0
-        clearRemainingSlot(buffer, month.length(), Record.MONTH_SIZE);
+    /**
+     * return current time in milliseconds
+     *
+     * @return time in milliseconds
+     */
+    private static long getCurTime() {
+        return System.currentTimeMillis();
+    }
 
-        buffer.put(DbUtil.intToBytes(mDate), 0, Record.INT_SIZE);
-        buffer.put(day.getBytes(charset), 0, day.length());
+    /**
+     * number of pages encoded by one worker task, a chunk holds exactly this many pages of records
+     */
+    private static final int PAGES_PER_CHUNK = 64;
 
-        // size for day may be vary, reset any remaining slot allocated to DAY field to 0
-        clearRemainingSlot(buffer, day.length(), Record.DAY_SIZE);
+    /**
+     * Reader stage: cuts the raw bytes of the csv file into chunks of whole records
+     * line breaks inside quoted fields do not end a record, and empty lines are not counted
+     */
+    private static class ChunkReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int pos = 0, limit = 0;
+        /** scan state carried from one chunk to the next */
+        private boolean inQuotes = false, quoteClosed = false, fieldStart = true, content = false;
 
-        buffer.put(DbUtil.intToBytes(time), 0, Record.INT_SIZE);
-        buffer.put(DbUtil.intToBytes(sensorId), 0, Record.INT_SIZE);
-        buffer.put(sensorName.getBytes(charset), 0, sensorName.length());
+        ChunkReader(InputStream in) {
+            this.in = in;
+        }
 
-        // size for sensor_name may be vary, reset any remaining slot allocated to SENSOR_NAME field to 0
-        clearRemainingSlot(buffer, sensorName.length(), Record.SENSOR_NAME_SIZE);
+        /**
+         * read the next records as raw bytes, line breaks included
+         *
+         * @param records number of records
+         * @return bytes of the records, fewer records at the end of the file, null when nothing is left
+         * @throws IOException when reading fails
+         */
+        byte[] next(int records) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(records * Record.size);
+            int count = 0;
+            while (count < records) {
+                if (pos == limit) {
+                    limit = Math.max(in.read(buffer), 0);
+                    pos = 0;
+                    if (limit == 0) {
+                        break;
+                    }
+                }
+                int begin = pos;
+                while (pos < limit && count < records) {
+                    if (endOfRecord(buffer[pos++])) {
+                        ++count;
+                    }
+                }
+                out.write(buffer, begin, pos - begin);
+            }
+            return out.size() == 0 ? null : out.toByteArray();
+        }
 
-        buffer.put(DbUtil.intToBytes(hourlyCounts), 0, Record.INT_SIZE);
-        buffer.put(sdtName.getBytes(charset), 0, sdtName.length());
-        // size for sdt_name may be vary, reset any remaining slot allocated to SDT_NAME field to 0
-        clearRemainingSlot(buffer, sdtName.length(), Record.SDT_NAME_SIZE);
+        /**
+         * follow the quotes the same way as CsvTokenizer, a quote opens a quoted field only at the start of a field
+         *
+         * @param b next byte
+         * @return true if the byte ends a non-empty record
+         */
+        private boolean endOfRecord(byte b) {
+            if (inQuotes) {
+                inQuotes = b != '"';
+                quoteClosed = !inQuotes;
+                return false;
+            }
+            if (b == '"' && (fieldStart || quoteClosed)) {
+                // opening quote, or the second quote of a doubled quote
+                inQuotes = true;
+                fieldStart = false;
+                content = true;
+                return false;
+            }
+            quoteClosed = false;
+            if (b == '\n') {
+                boolean end = content;
+                content = false;
+                fieldStart = true;
+                return end;
+            }
+            fieldStart = b == ',';
+            content |= b != '\r';
+            return false;
+        }
     }
 
     /**
-     * Reset the remaining allocated slot with ZERO 0, reason is for any given String attribute,
-     * it may only fill partial allocated slot, to keep data clean in the buffer, reset the remaining
-     * slot is necessary
-     *
-     * @param buffer    byte buffer where data is loading to
-     * @param strSize   the size of the given String attribute
-     * @param totalSize the total allocated size for any given String attribute
+     * Output of a parse/encode worker: whole pages ready to be appended to the heap file
      */
-    private static void clearRemainingSlot(ByteBuffer buffer, int strSize, int totalSize) {
-        // if total size > str size, indicating there is still remaining slots not filled
-        if (totalSize > strSize) {
-            // calculate the number of remaining slots
-            int len = totalSize - strSize;
-            // set up zeros to clear the page size buffer, by default value in array is 0
-            // e.g. { 0, 0, 0, ... 0 }
-            byte[] zeros = new byte[len];
-            buffer.put(zeros, 0, len);
+    private static class PageBlock {
+        /** END marks the end of the input for the writer stage */
+        static final PageBlock END = new PageBlock(new byte[0], 0, 0, new int[0]);
+
+        final byte[] pages;
+        final int pageCount;
+        final int recordCount;
+        /** zone of each page, see ZoneMap.zone */
+        final int[] zones;
+
+        PageBlock(byte[] pages, int pageCount, int recordCount, int[] zones) {
+            this.pages = pages;
+            this.pageCount = pageCount;
+            this.recordCount = recordCount;
+            this.zones = zones;
         }
     }
 
     /**
-     * return current time in milliseconds
+     * Parse/encode stage: parse every line of the chunk and encode the records into slotted pages,
+     * the page header and the zone of each page are filled in once its records are written
      *
-     * @return time in milliseconds
+     * @param chunk  raw bytes of whole lines
+     * @param layout page layout of the heap file
+     * @return encoded pages
+     * @throws IOException when a dictionary is full
      */
-    private static long getCurTime() {
-        return System.currentTimeMillis();
+    private static PageBlock encodeChunk(byte[] chunk, PageLayout layout) throws IOException {
+        int pageSize = layout.getPageSize(), recordsPerPage = layout.getCapacity();
+        // allocate a fix-sized buffer for all pages of the chunk, by default value for byte in array is 0
+        ByteBuffer buffer = ByteBuffer.allocate(PAGES_PER_CHUNK * pageSize);
+        ByteBuffer scratch = ByteBuffer.allocate(Record.SENSOR_NAME_SIZE);
+        CsvTokenizer record = new CsvTokenizer().reset(chunk, 0, chunk.length);
+        // the shared dictionaries are locked only for values this worker has not coded yet
+        Dictionary.Cache codes = layout.getDictionary() != null ? layout.getDictionary().cache() : null;
+        int count = 0;
+        while (record.nextLine()) {
+            // each record goes to its slot within its page
+            int page = count / recordsPerPage * pageSize, slot = count % recordsPerPage;
+            if (codes != null) {
+                recordToCodes(record, buffer, page, slot, layout, scratch, codes);
+            } else {
+                recordToBuffer(record, buffer, page, slot, layout);
+            }
+            ++count;
+        }
+        // only the last chunk of the file may end with a partial page
+        int pageCount = (count + recordsPerPage - 1) / recordsPerPage;
+        int[] zones = new int[pageCount * ZoneMap.PAGE_ZONE_SIZE];
+        for (int i = 0; i < pageCount; i++) {
+            ByteBuffer page = ByteBuffer.wrap(buffer.array(), i * pageSize, pageSize).slice();
+            layout.seal(page, Math.min(recordsPerPage, count - i * recordsPerPage));
+            ZoneMap.zone(page, layout, zones, i * ZoneMap.PAGE_ZONE_SIZE);
+        }
+        return new PageBlock(buffer.array(), pageCount, count, zones);
     }
 
     /**
      * Loading data from source file to heap.size file
+     * The loading is pipelined: the reader stage (calling thread) cuts the csv file into chunks of raw bytes,
+     * each chunk holding the records of PAGES_PER_CHUNK pages, the parse/encode workers turn chunks into pages
+     * in parallel, and the writer stage appends the pages to the heap file in chunk order.
+     * A bounded queue of pending chunks keeps the reader from running ahead of the writer.
      * important - code reference:
      * https://www.javatpoint.com/how-to-read-csv-file-in-java
      * https://mkyong.com/java/how-to-read-and-parse-csv-file-in-java/
@@ -156,87 +296,150 @@ public class DbLoad {
      * https://stackoverflow.com/questions/12108796/java-bytebuffer-filling-up-completely
      *
      * @param pageSize  size for each page
+     * @param layout    HeapFile.ROW_LAYOUT or HeapFile.PAX_LAYOUT
+     * @param encoded   true to store MONTH, DAY and SENSOR_NAME as dictionary codes and DATE_TIME as an int
      * @param inputFile data source file
+     * @param workers   number of parse/encode workers
+     * @return true if the heap file and its zone map are written, false if loading failed
      */
-    private static void dataLoading(int pageSize, String inputFile) {
-        String line;
-        final String comma = ",";
-        // count for number of records written per page
-        int count = 0;
-        // use to keep tracking the total number records written
-        int recordCount = 0;
-        // use to keep tracking the total number of pages
-        int pageCount = 0;
-        // use size to check if there is still enough space for 1 record in the buffer
-        int size;
+    private static boolean dataLoading(int pageSize, int layout, boolean encoded, String inputFile, int workers) {
+        if (!HeapFile.validPageSize(pageSize, layout)) {
+            System.err.println("page size " + pageSize + " is too small for the heap file header");
+            return false;
+        }
+        // the dictionaries are shared by the workers and saved in the header page when loading finishes
+        PageLayout pageLayout = new PageLayout(layout, pageSize, encoded ? new Dictionary() : null);
+        // number of records fitting in one page after the page header, the rest of the page is left as 0
+        int recordsPerPage = pageLayout.getCapacity();
         // output file name, e.g. heap.4096
         String outFile = String.format("heap.%d", pageSize);
-
-        // code references mentioned above
-        //parsing a CSV file into BufferedReader class constructor
+        ExecutorService encoders = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        // chunks handed to the writer in file order, each one is encoded by a worker in the meantime
+        BlockingQueue<Future<PageBlock>> pending = new ArrayBlockingQueue<>(2 * workers);
+        // time spent in each stage, in nanoseconds
+        AtomicLong encodeNanos = new AtomicLong();
+        long readNanos = 0, bytesRead = 0;
         try (
                 // auto closable without having to code finally code block
-                BufferedReader br = new BufferedReader(new FileReader(inputFile));
+                InputStream inputStream = new FileInputStream(inputFile);
                 FileOutputStream outStream = new FileOutputStream(outFile);
-                WritableByteChannel channel = Channels.newChannel(outStream)
+                FileChannel channel = outStream.getChannel()
         ) {
-            String[] record;
-            // allocate a fix-sized page size buffer, by default value for byte in array is 0
-            // e.g. { 0, 0, 0, ... 0 }
-            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
-            // use size to measure how many records have written to the buffer
-            size = pageSize;
-            // false when page buffer still has space for record size, true when page is insufficient
-            boolean insufficient = false;
-            // when reading csv file, the 1st line is always header
-            boolean isHeader = true;
-
             // marking start time when loading begins
             long start = getCurTime();
-            while ((line = br.readLine()) != null) {
-                // skip header from writing
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                // split each record as a String array
-                record = line.split(comma);
-                // deduct the record-size to indicate 1 block record-size space is taken
-                // when size is less than record-size, indicating not enough space of current page for record
-                if ((size -= Record.size) < Record.size) {
-                    insufficient = true;
+            // page 0 is the file header, written again with the final counts when loading finishes
+            ByteBuffer header = ByteBuffer.allocate(pageSize);
+            HeapFile.writeHeader(header, pageLayout, HeapFile.FIRST_PAGE, 0);
+            channel.write(header);
+            // zones of the pages in file order, appended by the writer stage
+            int[][] zones = {new int[1024]};
+            // writer stage returns {records, pages, nanoseconds spent writing}
+            Future<long[]> written = writer.submit(() -> {
+                long recordCount = 0, pageCount = 0, writeNanos = 0;
+                PageBlock block;
+                while ((block = pending.take().get()) != PageBlock.END) {
+                    long begin = System.nanoTime();
+                    channel.write(ByteBuffer.wrap(block.pages, 0, block.pageCount * pageSize));
+                    writeNanos += System.nanoTime() - begin;
+                    int zoneCount = (int) pageCount * ZoneMap.PAGE_ZONE_SIZE;
+                    if (zoneCount + block.zones.length > zones[0].length) {
+                        zones[0] = Arrays.copyOf(zones[0], Math.max(zones[0].length * 2, zoneCount + block.zones.length));
+                    }
+                    System.arraycopy(block.zones, 0, zones[0], zoneCount, block.zones.length);
+                    recordCount += block.recordCount;
+                    pageCount += block.pageCount;
                 }
-
-                // write each record into buffer
-                recordToBuffer(record, buffer);
-                // count the total number of records written for current page
-                ++count;
-
-                // if not enough page space for any more record, accumulate count to Record Count
-                // reset 1. insufficient to false 2. size to page-size 3. count to 0 for new page
-                if (insufficient) {
-                    ++pageCount;
-                    recordCount += count;
-                    insufficient = false;
-                    size = pageSize;
-                    count = 0;
-                    // clear buffer does not clear the content of the buffer,
-                    // but reset position of buffer from end to 0 for writing the content of buffer from beginning
-                    buffer.clear();
-                    channel.write(buffer);
-                    // after finishing writing, reset position of buffer from end to 0 again for new page
-                    // writing record into the buffer from starting position 0
-                    buffer.clear();
+                return new long[]{recordCount, pageCount, writeNanos};
+            });
+            ChunkReader reader = new ChunkReader(inputStream);
+            // when reading csv file, the 1st line is always header
+            reader.next(1);
+            while (true) {
+                long begin = System.nanoTime();
+                byte[] chunk = reader.next(PAGES_PER_CHUNK * recordsPerPage);
+                readNanos += System.nanoTime() - begin;
+                if (chunk == null) {
+                    break;
                 }
+                bytesRead += chunk.length;
+                Callable<PageBlock> encode = () -> {
+                    long encodeStart = System.nanoTime();
+                    PageBlock block = encodeChunk(chunk, pageLayout);
+                    encodeNanos.addAndGet(System.nanoTime() - encodeStart);
+                    return block;
+                };
+                // a single worker encodes on the reader thread, there is no core to overlap parsing with reading
+                handOff(pending, encoders != null ? encoders.submit(encode) : CompletableFuture.completedFuture(encode.call()), written);
             }
+            handOff(pending, CompletableFuture.completedFuture(PageBlock.END), written);
+            long[] stats = written.get();
+            HeapFile.writeHeader(header, pageLayout, (int) stats[1] + HeapFile.FIRST_PAGE, stats[0]);
+            channel.write(header, 0);
+            // the zone map file goes next to the heap file, e.g. heap.4096.zone
+            int[] pageZones = Arrays.copyOf(zones[0], (int) stats[1] * ZoneMap.PAGE_ZONE_SIZE);
+            new ZoneMap((int) stats[1] + HeapFile.FIRST_PAGE, stats[0], pageZones).write(ZoneMap.path(outFile));
             // marking end time when loading finished
             long end = getCurTime();
             long duration = end - start;
             // report summary when task finished
-            summaryReport(recordCount, pageCount, duration);
+            summaryReport((int) stats[0], (int) stats[1] + HeapFile.FIRST_PAGE, duration);
+            System.out.printf("\t   %s pages, %d bytes per record, %d records per page%n",
+                    pageLayout, pageLayout.getRecordSize(), recordsPerPage);
+            stageReport(workers, bytesRead, readNanos, stats[0], encodeNanos.get(), stats[1] * pageSize, stats[2]);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (encoders != null) {
+                encoders.shutdownNow();
+            }
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * hand a chunk over to the writer stage, waiting while the writer is behind
+     *
+     * @param pending chunks waiting for the writer
+     * @param block   encoded or encoding chunk
+     * @param written writer stage, checked while waiting so a failed writer does not block the reader forever
+     * @throws InterruptedException when interrupted while waiting
+     * @throws ExecutionException   when the writer stage failed
+     */
+    private static void handOff(BlockingQueue<Future<PageBlock>> pending, Future<PageBlock> block, Future<long[]> written)
+            throws InterruptedException, ExecutionException {
+        while (!pending.offer(block, 100, TimeUnit.MILLISECONDS)) {
+            if (written.isDone()) {
+                written.get();
+                throw new ExecutionException(new IllegalStateException("writer stage stopped before the end of the input"));
+            }
+        }
+    }
+
+    /**
+     * Build the B+ tree index files for the heap file, e.g. heap.4096.idx on ID,
+     * heap.4096.sensor.idx, heap.4096.date.idx and heap.4096.sdt.idx as secondary indexes,
+     * and the per-page Bloom filters of ID and SDT_NAME, heap.4096.bloom
+     *
+     * @param pageSize   size for each page, the index file uses the same page size
+     * @param fillFactor fraction of each index page filled with entries
+     */
+    private static void indexBuilding(int pageSize, double fillFactor) {
+        String heapFile = String.format("heap.%d", pageSize);
+        long start = getCurTime();
+        try {
+            for (IndexKey indexKey : IndexKey.values()) {
+                IndexFile.build(heapFile, indexKey, fillFactor, ExternalSorter.DEFAULT_RUN_SIZE);
+            }
+            BloomFilter.build(heapFile);
         } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+        long duration = getCurTime() - start;
+        System.out.printf("\t4. total number of milliseconds to create the index files and Bloom filters: %d milliseconds = %.2f seconds%n", duration, duration / 1000f);
     }
 
     /**
@@ -253,6 +456,28 @@ public class DbLoad {
         System.out.printf("\t3. total number of milliseconds to create the heap file: %d milliseconds = %.2f seconds%n", duration, duration / 1000f);
     }
 
+    /**
+     * Report the throughput of each stage of the loading pipeline, measured on the time spent inside the stage
+     *
+     * @param workers      number of parse/encode workers
+     * @param bytesRead    bytes of the csv file read by the reader stage
+     * @param readNanos    time spent reading
+     * @param recordCount  records encoded into full pages
+     * @param encodeNanos  time spent parsing and encoding, summed over all workers
+     * @param bytesWritten bytes written to the heap file
+     * @param writeNanos   time spent writing
+     */
+    private static void stageReport(int workers, long bytesRead, long readNanos, long recordCount, long encodeNanos,
+                                    long bytesWritten, long writeNanos) {
+        double mb = 1024 * 1024;
+        System.out.printf("\t   reader stage: %.1f MB in %d milliseconds = %.1f MB/s%n",
+                bytesRead / mb, readNanos / 1000000, bytesRead / mb / Math.max(readNanos, 1) * 1e9);
+        System.out.printf("\t   parse/encode stage: %d workers, %d records in %d milliseconds of worker time = %.0f records/s per worker%n",
+                workers, recordCount, encodeNanos / 1000000, recordCount / (double) Math.max(encodeNanos, 1) * 1e9);
+        System.out.printf("\t   writer stage: %.1f MB in %d milliseconds = %.1f MB/s%n",
+                bytesWritten / mb, writeNanos / 1000000, bytesWritten / mb / Math.max(writeNanos, 1) * 1e9);
+    }
+
     /**
      * DBLoad program driver function
      * 1. verify the command line arguments
@@ -271,6 +496,25 @@ public class DbLoad {
         // if invalid, then print error message and exit program when invalid args provided
         int pageSize = 40960;
         String file = "count.csv";
+        int layout = HeapFile.ROW_LAYOUT;
+        boolean encoded = false;
+        double fillFactor = IndexFile.DEFAULT_FILL_FACTOR;
+        for (int i = 0; i < args.length; i++) {
+            // PAX page layout for analytic scans, e.g. java DbLoad -pax
+            if ("-pax".equals(args[i])) {
+                layout = HeapFile.PAX_LAYOUT;
+            // dictionary-encoded records, e.g. java DbLoad -dict
+            } else if ("-dict".equals(args[i])) {
+                encoded = true;
+            // percentage of each index page filled, e.g. java DbLoad -fill 70
+            } else if ("-fill".equals(args[i]) && i + 1 < args.length) {
+                if (DbUtil.notNumber(args[++i]) || DbUtil.toInt(args[i]) < 1 || DbUtil.toInt(args[i]) > 100) {
+                    System.err.println("the fill percentage must be a number in [1, 100]: " + args[i]);
+                    return;
+                }
+                fillFactor = DbUtil.toInt(args[i]) / 100.0;
+            }
+        }
 //        if (!verifyArgs(args)) {
 //            return;
 //        }
@@ -278,7 +522,13 @@ public class DbLoad {
 
         // System.out.println("PAGE SIZE = " + pageSize + " - FILE NAME = " + file);
         System.out.println("DB loading program starts ...");
-        dataLoading(pageSize, file);
+        // one parse/encode worker per core
+        // the indexes are only built over a complete heap file
+        if (!dataLoading(pageSize, layout, encoded, file, Runtime.getRuntime().availableProcessors())) {
+            System.err.println("DB loading failed, the index files and Bloom filters are not built");
+            return;
+        }
+        indexBuilding(pageSize, fillFactor);
         System.out.println("DB loading program finished ...");
     }
 }
\ No newline at end of file
@@ -1,7 +1,12 @@
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Querying data from heap.size file
@@ -15,10 +20,53 @@ import java.util.Scanner;
  */
 public class DbQuery {
 
-    static BPlusTree<Integer, Long> tree = new BPlusTree<>(100);
-
     static String heapPath = "heap.40960";
 
+    /**
+     * disk-resident B+ tree indexes on ID, SENSOR_ID, date and SDT_NAME, opened once at startup
+     */
+    static Map<IndexKey, IndexFile> indexes = new EnumMap<>(IndexKey.class);
+
+    /**
+     * per-page min/max of ID, YEAR, SENSOR_ID and HOURLY_COUNTS, scans skip the pages it rules out
+     */
+    static ZoneMap zoneMap;
+
+    /**
+     * per-page Bloom filters of ID and SDT_NAME, point lookups read only the pages which may hold the key
+     */
+    static BloomFilter bloomFilter;
+
+    /**
+     * memory-mapped heap file when running in mapped reader mode (-m), null when reading with streams
+     */
+    static MappedHeapFile mappedHeap;
+
+    /**
+     * heap file channel for positioned page reads
+     */
+    static FileChannel heapChannel;
+
+    /**
+     * shared buffer pool of heap and index pages, repeated queries on hot pages are served from memory
+     */
+    static BufferPool bufferPool;
+
+    /**
+     * file id of the heap file in the buffer pool
+     */
+    static int heapFileId;
+
+    /**
+     * page layout of the heap file, from its header
+     */
+    static PageLayout layout;
+
+    /**
+     * record view reused for every printed record
+     */
+    private static RecordView view;
+
     /**
      * Verify if the command line arguments meet the requirement
      * <p>
@@ -55,7 +103,10 @@ public class DbQuery {
     }
 
     /**
-     * Perform search operation given the search text for SDT_NAME in heap file
+     * Perform search operation given the search text for ID in heap file
+     * The page ranges of the heap file are scanned in parallel on the ID column, through the memory mapping in -m mode
+     * or with positioned reads otherwise, the pages ruled out by the zone map and the Bloom filters are skipped.
+     * The pages of the matched records are then read whole to print them.
      * important - code reference:
      * https://www.javatpoint.com/how-to-read-csv-file-in-java
      * https://mkyong.com/java/how-to-read-and-parse-csv-file-in-java/
@@ -70,140 +121,418 @@ public class DbQuery {
      * @param pageSize page size from command line arguments
      */
     private static void doSearch(String text, int pageSize) {
-        String file = heapPath;
-        Charset charset = StandardCharsets.UTF_8;
-        try (InputStream inputStream = new FileInputStream(file)) {
-            byte[] buffer = new byte[pageSize];
-            byte[] record = new byte[Record.size];
-            int size = record.length;
-            int len, matchCount = 0;
+        // the search text is converted once, each record is compared on its int ID read in place
+        int key = DbUtil.toInt(text);
+        printHeader();
+        // marking the start time when querying begins
+        long start = System.currentTimeMillis();
+        int matchCount = 0;
+        try {
+            ParallelScan scan = new ParallelScan(heapChannel, mappedHeap, layout, ForkJoinPool.commonPool());
+            long[] rids = scan.scan(RecordPredicate.intEquals(Column.ID, key), pageNo -> mayHoldId(pageNo, key), Column.ID);
+            ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+            ByteBuffer page = buffer;
+            int lastPage = -1;
+            for (long rid : rids) {
+                // extract all attributes of the matched record from its page then print result
+                if (DbUtil.ridPage(rid) != lastPage) {
+                    lastPage = DbUtil.ridPage(rid);
+                    page = readPage(lastPage, buffer);
+                }
+                ++matchCount;
+                printRecord(page, DbUtil.ridSlot(rid));
+            }
+            System.out.printf("Full scan of the %s heap file: %s%d of %d pages skipped by the zone map and Bloom filters%n", layout,
+                    mappedHeap == null ? String.format("%.1f MB read, ", scan.getBytesRead() / (1024 * 1024f)) : "",
+                    scan.getPagesSkipped(), scan.getPageCount());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getCause().getMessage());
+            return;
+        }
+        // if no match record can be found given the search text
+        if (matchCount == 0) {
+            System.err.println("Sorry, no match can be found based on the given search text !!!");
+        }
+        summaryReport(matchCount, System.currentTimeMillis() - start);
+    }
 
-            char tab = '\t';
-            String sep = tab + "" + tab;
-            // print header
-            System.out.printf("ID%s%sDateTime%s%sYear%sMonth%sMDate%sDay%sTime%sSensorId%sSensorName%sHourly Counts%n",
-                    sep, sep, sep, sep, sep, sep, sep, sep, sep, sep, sep);
+    /**
+     * @param pageNo page number of a data page
+     * @param key    searched ID
+     * @return false if the zone map or the Bloom filter of the page rules out the ID
+     */
+    private static boolean mayHoldId(int pageNo, int key) {
+        return zoneMap.mayContain(pageNo, Column.ID, key, key) && bloomFilter.mayContain(pageNo, IndexKey.ID, key);
+    }
 
-            // header in the csv file
-            int id = 0, year = 0, mDate = 0, time = 0, sensorId = 0, hourlyCounts = 0;
-            String dateTime = null, month = null, day = null, sensorName = null, sdtName = null;
-            long pos = 0;
-            int cnt = 0;
-            boolean go = false;
-            // marking the start time when querying begins
-            long start = System.currentTimeMillis();
-            // each iteration, read exact 1 page-size into buffer
-            while (inputStream.read(buffer) != -1) {
-                len = buffer.length;
-                int count = 0;
-                while ((len -= size) > 0) {
-                    // copy 1 record-size data from buffer to record-buffer
-                    System.arraycopy(buffer, count++ * size, record, 0, size);
-                    id = DbUtil.bytesToInt(record, 0, Record.INT_SIZE);
-                    tree.insertOrUpdate(id,pos);
-                    // if match found, then extract all attributes from record-buffer then print result
-                    if (text.equalsIgnoreCase(String.valueOf(id))) {
+    /**
+     * Perform search operation given a SDT_NAME key through the Bloom filters,
+     * only the pages whose filter may hold the key are read, then their records are compared on the key
+     *
+     * @param sdtKey   SDT_NAME key, see IndexKey.sdtKey
+     * @param pageSize page size of the heap file
+     */
+    static void bloomSearch(long sdtKey, int pageSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        int matchCount = 0, pagesRead = 0;
+        long start = System.currentTimeMillis();
+        try {
+            printHeader();
+            int pageCount = (int) (heapChannel.size() / pageSize);
+            for (int pageNo = HeapFile.FIRST_PAGE; pageNo < pageCount; pageNo++) {
+                if (!bloomFilter.mayContain(pageNo, IndexKey.SDT_NAME, sdtKey)) {
+                    continue;
+                }
+                ++pagesRead;
+                ByteBuffer page = readPage(pageNo, buffer);
+                int count = HeapFile.recordCount(page);
+                for (int slot = 0; slot < count; slot++) {
+                    if (IndexKey.SDT_NAME.extract(view.wrap(page, slot)) == sdtKey) {
                         ++matchCount;
-                        dateTime = DbUtil.bytesToStr(record, Record.DATE_TIME_OFFSET, Record.DATE_TIME_SIZE, charset);
-                        year = DbUtil.bytesToInt(record, Record.YEAR_OFFSET, Record.INT_SIZE);
-                        month = DbUtil.bytesToStr(record, Record.MONTH_OFFSET, Record.MONTH_SIZE, charset);
-                        mDate = DbUtil.bytesToInt(record, Record.M_DATE_OFFSET, Record.INT_SIZE);
-                        day = DbUtil.bytesToStr(record, Record.DAY_OFFSET, Record.DAY_SIZE, charset);
-                        time = DbUtil.bytesToInt(record, Record.TIME_OFFSET, Record.INT_SIZE);
-                        sensorId = DbUtil.bytesToInt(record, Record.SENSOR_ID_OFFSET, Record.INT_SIZE);
-                        sensorName = DbUtil.bytesToStr(record, Record.SENSOR_NAME_OFFSET, Record.SENSOR_NAME_SIZE, charset);
-                        hourlyCounts = DbUtil.bytesToInt(record, Record.HOURLY_COUNTS_OFFSET, Record.INT_SIZE);
-                        System.out.printf("%d%s%s%s%d%s%s%s%d%s%s%s%d%s%d%s%s%s%d\n",
-                                id, sep, dateTime, sep, year, sep, month, sep, mDate, sep, day, sep, time, sep, sensorId, sep, sensorName, sep, hourlyCounts);
-
+                        printRecord(page, slot);
                     }
                 }
-                pos += len;
-                ++cnt;
-//                if( cnt > 10){
-//                    System.out.println("stop");
-//                    break;
-//                }
             }
-            // if no match record can be found given the search text
-            if (matchCount == 0) {
+            System.out.printf("Bloom filter lookup: %d of %d pages read%n", pagesRead, pageCount - HeapFile.FIRST_PAGE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (matchCount == 0) {
+            System.err.println("Sorry, no match can be found based on the given search text !!!");
+        }
+        summaryReport(matchCount, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Perform search operation given the ID through the index file,
+     * the index lookup reads height pages of the index file, then the record id leads to exactly one heap page
+     *
+     * @param key      search ID
+     * @param pageSize page size of the heap file
+     */
+    static void find(int key, int pageSize) {
+        try {
+            IndexFile index = indexes.get(IndexKey.ID);
+            long readsBefore = index.getPageReads();
+            long rid = index.find(key);
+            System.out.printf("Index lookup: %d index pages read, index height %d%n",
+                    index.getPageReads() - readsBefore, index.getHeight());
+            if (rid == IndexFile.NOT_FOUND) {
                 System.err.println("Sorry, no match can be found based on the given search text !!!");
+                return;
             }
-            // marking the start time when querying begins
-            long end = System.currentTimeMillis();
-            long duration = end - start;
-            summaryReport(matchCount, duration);
+            printHeader();
+            readRecord(rid, pageSize);
         } catch (IOException e) {
             e.printStackTrace();
-            System.exit(1);
         }
     }
 
-    static void find(int key,int pageSize){
-        long pos = tree.find(key);
-        readRecordSkip(pos,pageSize,String.valueOf(key));
+    /**
+     * Delete the record of the ID from the index files, the ID index leads to the record and the key of every
+     * index is computed from it. The heap file is append-only and keeps the record until the next load,
+     * so the full scans, the Bloom filter lookup and the aggregations still see it.
+     *
+     * @param key      ID of the deleted record
+     * @param pageSize page size of the heap file
+     */
+    static void delete(int key, int pageSize) {
+        try {
+            long rid = indexes.get(IndexKey.ID).find(key);
+            if (rid == IndexFile.NOT_FOUND) {
+                System.err.println("Sorry, no match can be found based on the given search text !!!");
+                return;
+            }
+            ByteBuffer page = readPage(DbUtil.ridPage(rid), ByteBuffer.allocate(pageSize));
+            RecordView record = view.wrap(page, DbUtil.ridSlot(rid));
+            int removed = 0;
+            for (IndexKey indexKey : IndexKey.values()) {
+                if (indexes.get(indexKey).remove(indexKey.extract(record), rid)) {
+                    ++removed;
+                }
+            }
+            System.out.printf("Record %d deleted from %d index files, %d entries left in the ID index%n",
+                    key, removed, indexes.get(IndexKey.ID).getEntryCount());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
+    /**
+     * Open the index files of the heap file for writing so records can be deleted, an index file is built once
+     * by scanning the heap file if it does not exist or was written in an older format
+     *
+     * @throws IOException when building or opening an index file fails
+     */
+    static void openIndexes() throws IOException {
+        for (IndexKey indexKey : IndexKey.values()) {
+            String indexFile = indexKey.path(heapPath);
+            if (DbUtil.exists(indexFile)) {
+                try {
+                    indexes.put(indexKey, new IndexFile(indexFile, bufferPool, true));
+                    continue;
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+            System.out.println("Index file not found, building " + indexFile + " ...");
+            IndexFile.build(heapPath, indexKey);
+            indexes.put(indexKey, new IndexFile(indexFile, bufferPool, true));
+        }
+    }
 
-    public static void readRecordSkip(long n,int pageSize,String text) {
-        String file = heapPath;
-        Charset charset = StandardCharsets.UTF_8;
-        byte[] buffer = new byte[pageSize];
-        byte[] record = new byte[Record.size];
-        int id = 0, year , mDate , time , sensorId , hourlyCounts ;
-        int size = record.length;
-        int len, matchCount = 0;
-        String sep = "\t" + "" + "\t";
-        boolean go = false;
-        String dateTime , month , day , sensorName;
-        try(InputStream inputStream = new FileInputStream(file)){
-            inputStream.skip(n);
-            // marking the start time when querying begins
-            long start = System.currentTimeMillis();
-            // each iteration, read exact 1 page-size into buffer
-            while (inputStream.read(buffer) != -1) {
-                len = buffer.length;
-                int count = 0;
-                while ((len -= size) > 0) {
-                    // copy 1 record-size data from buffer to record-buffer
-                    System.arraycopy(buffer, count++ * size, record, 0, size);
-                    // get the SDT_NAME from record-buffer
-                    id = DbUtil.bytesToInt(record, 0, Record.INT_SIZE);
-                    if(text.equalsIgnoreCase(String.valueOf(id))){
-                        matchCount++;
-                        dateTime = DbUtil.bytesToStr(record, Record.DATE_TIME_OFFSET, Record.DATE_TIME_SIZE, charset);
-                        year = DbUtil.bytesToInt(record, Record.YEAR_OFFSET, Record.INT_SIZE);
-                        month = DbUtil.bytesToStr(record, Record.MONTH_OFFSET, Record.MONTH_SIZE, charset);
-                        mDate = DbUtil.bytesToInt(record, Record.M_DATE_OFFSET, Record.INT_SIZE);
-                        day = DbUtil.bytesToStr(record, Record.DAY_OFFSET, Record.DAY_SIZE, charset);
-                        time = DbUtil.bytesToInt(record, Record.TIME_OFFSET, Record.INT_SIZE);
-                        sensorId = DbUtil.bytesToInt(record, Record.SENSOR_ID_OFFSET, Record.INT_SIZE);
-                        sensorName = DbUtil.bytesToStr(record, Record.SENSOR_NAME_OFFSET, Record.SENSOR_NAME_SIZE, charset);
-                        hourlyCounts = DbUtil.bytesToInt(record, Record.HOURLY_COUNTS_OFFSET, Record.INT_SIZE);
-                        System.out.printf("%s%s%s%s%d%s%s%s%d%s%s%s%d%s%d%s%s%s%d\n",
-                                id, sep, dateTime, sep, year, sep, month, sep, mDate, sep, day, sep, time, sep, sensorId, sep, sensorName, sep, hourlyCounts);
-                    }
+    /**
+     * Open the zone map and the Bloom filters of the heap file, each file is built by scanning the heap file
+     * if it does not exist or does not match the heap file
+     *
+     * @param header file header of the heap file
+     * @throws IOException when building or reading a file fails
+     */
+    static void openPageFilters(HeapFile.Header header) throws IOException {
+        String zoneFile = ZoneMap.path(heapPath);
+        if (DbUtil.exists(zoneFile)) {
+            try {
+                zoneMap = ZoneMap.read(zoneFile, header);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        if (zoneMap == null) {
+            System.out.println("Zone map not found, building " + zoneFile + " ...");
+            ZoneMap.build(heapPath);
+            zoneMap = ZoneMap.read(zoneFile, header);
+        }
+        String bloomFile = BloomFilter.path(heapPath);
+        if (DbUtil.exists(bloomFile)) {
+            try {
+                bloomFilter = BloomFilter.read(bloomFile, header);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        if (bloomFilter == null) {
+            System.out.println("Bloom filters not found, building " + bloomFile + " ...");
+            BloomFilter.build(heapPath);
+            bloomFilter = BloomFilter.read(bloomFile, header);
+        }
+    }
+
+    /**
+     * Read one heap page, copied out of the buffer pool or the page of the memory mapping
+     *
+     * @param pageNo page number
+     * @param buffer page buffer used when reading through the buffer pool
+     * @return buffer holding the page
+     * @throws IOException when reading fails or the page is corrupted
+     */
+    static ByteBuffer readPage(int pageNo, ByteBuffer buffer) throws IOException {
+        ByteBuffer page = buffer;
+        if (mappedHeap != null) {
+            page = mappedHeap.page(pageNo);
+        } else {
+            bufferPool.read(heapFileId, pageNo, buffer);
+        }
+        layout.check(page, pageNo);
+        return page;
+    }
+
+    /**
+     * Read the record of the record id, one heap page is read and one slot is decoded
+     *
+     * @param rid      record id from the index, see DbUtil.toRid
+     * @param pageSize page size of the heap file
+     * @throws IOException when reading fails or the page is corrupted
+     */
+    static void readRecord(long rid, int pageSize) throws IOException {
+        // marking the start time when querying begins
+        long start = System.currentTimeMillis();
+        int pageNo = DbUtil.ridPage(rid);
+        int slot = DbUtil.ridSlot(rid);
+        if (mappedHeap != null) {
+            ByteBuffer page = mappedHeap.page(pageNo);
+            layout.check(page, pageNo);
+            printRecord(page, slot);
+        } else {
+            // the record is decoded straight out of the pinned frame
+            ByteBuffer page = bufferPool.pin(heapFileId, pageNo);
+            try {
+                layout.check(page, pageNo);
+                printRecord(page, slot);
+            } finally {
+                bufferPool.unpin(heapFileId, pageNo);
+            }
+        }
+        summaryReport(1, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Perform search operation given a key range through one index file,
+     * one index descent to the first key then walking the leaf pages, each heap page is read once for consecutive records
+     *
+     * @param indexKey key of the index file
+     * @param fromKey  first key included
+     * @param toKey    last key included
+     * @param pageSize page size of the heap file
+     */
+    static void indexSearch(IndexKey indexKey, long fromKey, long toKey, int pageSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        ByteBuffer page = buffer;
+        int matchCount = 0;
+        int lastPage = -1;
+        long start = System.currentTimeMillis();
+        try {
+            printHeader();
+            IndexFile.Cursor cursor = indexes.get(indexKey).range(fromKey, toKey);
+            while (cursor.next()) {
+                long rid = cursor.getValue();
+                if (DbUtil.ridPage(rid) != lastPage) {
+                    lastPage = DbUtil.ridPage(rid);
+                    page = readPage(lastPage, buffer);
                 }
-//                System.out.println(id + "," + text);
-                if(go){
-                    break;
+                ++matchCount;
+                printRecord(page, DbUtil.ridSlot(rid));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (matchCount == 0) {
+            System.err.println("Sorry, no match can be found based on the given search text !!!");
+        }
+        summaryReport(matchCount, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Perform search operation through the secondary indexes given the search text
+     * 1. "sensor 12": all counts of a sensor
+     * 2. "sensor 12 09/24/2010": all counts of a sensor on a date
+     * 3. "date 09/24/2010" or "date 09/24/2010 05:00:00 PM": all counts on a date or at a date time
+     * 4. SDT_NAME, e.g. "109/24/2010 12:00:00 AM": the count of a sensor at a date time, through the Bloom filters
+     * 5. "index 109/24/2010 12:00:00 AM": the same count through the SDT_NAME index
+     *
+     * @param text     search text
+     * @param pageSize page size of the heap file
+     * @return false if the search text is not a secondary index search
+     */
+    static boolean secondarySearch(String text, int pageSize) {
+        String[] words = text.split("\\s+", 3);
+        if ("sensor".equalsIgnoreCase(words[0]) && words.length >= 2 && !DbUtil.notNumber(words[1])) {
+            int sensorId = DbUtil.toInt(words[1]);
+            if (words.length == 2) {
+                indexSearch(IndexKey.SENSOR_ID, sensorId, sensorId, pageSize);
+                return true;
+            }
+            long dateKey = IndexKey.parseDateKey(words[2]);
+            if (dateKey != -1) {
+                // all hours of the date are contiguous under the sensor
+                long day = dateKey - dateKey % 100;
+                indexSearch(IndexKey.SDT_NAME, IndexKey.sdtKey(sensorId, day), IndexKey.sdtKey(sensorId, day + 23), pageSize);
+                return true;
+            }
+        } else if ("date".equalsIgnoreCase(words[0]) && words.length >= 2) {
+            String dateText = text.substring(words[0].length()).trim();
+            long dateKey = IndexKey.parseDateKey(dateText);
+            if (dateKey != -1) {
+                boolean wholeDay = dateText.split("\\s+").length == 1;
+                indexSearch(IndexKey.DATE, dateKey, wholeDay ? dateKey + 23 : dateKey, pageSize);
+                return true;
+            }
+        } else {
+            boolean viaIndex = "index".equalsIgnoreCase(words[0]);
+            long sdtKey = IndexKey.parseSdtKey(viaIndex ? text.substring(words[0].length()) : text);
+            if (sdtKey != -1) {
+                if (viaIndex) {
+                    indexSearch(IndexKey.SDT_NAME, sdtKey, sdtKey, pageSize);
+                } else {
+                    bloomSearch(sdtKey, pageSize);
                 }
+                return true;
             }
+        }
+        return false;
+    }
 
-            if (matchCount == 0) {
-                System.err.println("Sorry, no match can be found based on the given search text !!!");
+    /**
+     * Report SUM / AVG / MAX of HOURLY_COUNTS grouped by one attribute, e.g. "group sensor",
+     * optionally of one year or a range of years, e.g. "group sensor 2010" or "group month 2009 2011".
+     * The page ranges of the heap file are aggregated in parallel on the group column and HOURLY_COUNTS only,
+     * the pages ruled out by the zone map for the years are skipped
+     *
+     * @param text search text
+     * @return false if the search text is not an aggregation
+     */
+    static boolean aggregate(String text) {
+        String[] words = text.split("\\s+");
+        if (words.length < 2 || words.length > 4 || !"group".equalsIgnoreCase(words[0])) {
+            return false;
+        }
+        GroupBy groupBy = GroupBy.parse(words[1]);
+        if (groupBy == null) {
+            System.err.println("invalid group: " + words[1] + ", use sensor, year, month, day or hour");
+            return true;
+        }
+        int fromYear = Integer.MIN_VALUE, toYear = Integer.MAX_VALUE;
+        if (words.length > 2) {
+            if (DbUtil.notNumber(words[2]) || (words.length > 3 && DbUtil.notNumber(words[3]))) {
+                System.err.println("invalid year range: " + text.substring(text.indexOf(words[2])));
+                return true;
             }
-            // marking the start time when querying begins
-            long end = System.currentTimeMillis();
-            long duration = end - start;
-            summaryReport(matchCount, duration);
-        }catch (IOException e){
+            fromYear = DbUtil.toInt(words[2]);
+            toYear = words.length > 3 ? DbUtil.toInt(words[3]) : fromYear;
+        }
+        long start = System.currentTimeMillis();
+        GroupTable groups;
+        try {
+            AggregateScan scan = new AggregateScan(heapChannel, mappedHeap, layout, ForkJoinPool.commonPool());
+            int from = fromYear, to = toYear;
+            groups = scan.aggregate(groupBy, from, to, pageNo -> zoneMap.mayContain(pageNo, Column.YEAR, from, to));
+            if (mappedHeap == null) {
+                System.out.printf("Aggregation of the %s heap file: %.1f MB read%n", layout, scan.getBytesRead() / (1024 * 1024f));
+            }
+        } catch (IOException e) {
             e.printStackTrace();
+            return true;
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getCause().getMessage());
+            return true;
         }
-
+        String sep = "\t\t";
+        System.out.printf("%s%sCount%sSum%sAvg%sMax%n", groupBy, sep, sep, sep, sep);
+        for (int key : groups.sortedKeys()) {
+            System.out.printf("%s%s%d%s%d%s%.2f%s%d%n", groupBy.label(key), sep, groups.count(key), sep,
+                    groups.sum(key), sep, groups.average(key), sep, groups.max(key));
+        }
+        long duration = System.currentTimeMillis() - start;
+        System.out.println("Summary Report: ");
+        System.out.printf("\t1. the total number of groups: %d%n", groups.size());
+        System.out.printf("\t2. the total amount time taken %d milliseconds = %.2f seconds for aggregation%n", duration, duration / 1000f);
+        return true;
     }
 
+    /**
+     * print the column names of the search result
+     */
+    private static void printHeader() {
+        String sep = "\t\t";
+        System.out.printf("ID%s%sDateTime%s%sYear%sMonth%sMDate%sDay%sTime%sSensorId%sSensorName%sHourly Counts%n",
+                sep, sep, sep, sep, sep, sep, sep, sep, sep, sep, sep);
+    }
 
+    /**
+     * extract all attributes of one record straight out of the buffer then print the result
+     *
+     * @param buffer page buffer holding the record, heap or memory-mapped
+     * @param slot   slot of the record in the page
+     */
+    private static void printRecord(ByteBuffer buffer, int slot) {
+        String sep = "\t\t";
+        RecordView record = view.wrap(buffer, slot);
+        System.out.printf("%d%s%s%s%d%s%s%s%d%s%s%s%d%s%d%s%s%s%d\n",
+                record.getId(), sep, record.getDateTime(), sep, record.getYear(), sep, record.getMonth(), sep,
+                record.getMDate(), sep, record.getDay(), sep, record.getTime(), sep, record.getSensorId(), sep,
+                record.getSensorName(), sep, record.getHourlyCounts());
+    }
 
     /**
      * Report summary when task finished
@@ -215,6 +544,10 @@ public class DbQuery {
         System.out.println("Summary Report: ");
         System.out.printf("\t1. the total number of matched record found: %d%n", matchCount);
         System.out.printf("\t2. the total amount time taken %d milliseconds = %.2f seconds for search operation%n", duration, duration / 1000f);
+        if (bufferPool != null) {
+            System.out.printf("\t3. buffer pool: %d hits, %d misses of %d frames%n",
+                    bufferPool.getHits(), bufferPool.getMisses(), bufferPool.getFrameCount());
+        }
     }
 
     /**
@@ -233,25 +566,97 @@ public class DbQuery {
      */
     static public void main(String... args) {
         String searchText;
-        int pageSize = 40960;
+        int pageSize = 0;
         // can be used for command line arguments
         searchText = "2887932";
         if(args.length > 0){
             heapPath = args[0];
-            pageSize = Integer.parseInt(heapPath.substring(heapPath.indexOf("heap") + 5));
+        }
+        // the page size comes from the file header, the heap file can have any name
+        HeapFile.Header header = null;
+        try {
+            header = HeapFile.readHeader(heapPath);
+            layout = header.pageLayout();
+            pageSize = layout.getPageSize();
+            view = new RecordView(layout);
+        } catch (IOException e) {
+            System.err.println(heapPath + ": " + e.getMessage());
+            System.exit(1);
         }
 
         // extract the search text and page size information from command line
         System.out.println("DB query program starts ...");
+        int frameCount = BufferPool.DEFAULT_FRAME_COUNT;
+        boolean mapped = false;
+        for (int i = 1; i < args.length; i++) {
+            // memory-mapped reader mode, e.g. java DbQuery ../heap.40960 -m
+            if ("-m".equals(args[i])) {
+                mapped = true;
+            // number of buffer pool frames, e.g. java DbQuery ../heap.40960 -b 1024
+            } else if ("-b".equals(args[i]) && i + 1 < args.length && !DbUtil.notNumber(args[i + 1])) {
+                frameCount = DbUtil.toInt(args[++i]);
+            }
+        }
+        try {
+            bufferPool = new BufferPool(frameCount, pageSize);
+            heapChannel = FileChannel.open(Paths.get(heapPath), StandardOpenOption.READ);
+            heapFileId = bufferPool.register(heapChannel);
+            openIndexes();
+            openPageFilters(header);
+            if (mapped) {
+                mappedHeap = new MappedHeapFile(heapPath, layout);
+                System.out.println("Reading heap file through memory mapping");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
         Scanner scanner = new Scanner(System.in);
         while(true){
-            System.out.println("Please input id to search,eg:2887932,input 'stop' to stop this program");
+            System.out.println("Please input id to search,eg:2887932, or 'from to' for an id range,eg:2887932 2887950, 'scan 2887932' to scan the heap file,");
+            System.out.println("or 'sensor 12', 'sensor 12 09/24/2010', 'date 09/24/2010', a SDT_NAME,eg:109/24/2010 12:00:00 AM, 'index' and a SDT_NAME to use its index,");
+            System.out.println("'group sensor' or 'group sensor 2009 2010' for the counts by sensor, year, month, day or hour, 'delete 2887932' to delete a record,");
+            System.out.println("input 'stop' to stop this program");
+            if(!scanner.hasNextLine()){
+                break;
+            }
+            searchText = scanner.nextLine().trim();
             if("stop".equalsIgnoreCase(searchText)){
                 break;
             }
-            searchText = scanner.nextLine();
-            doSearch(searchText, pageSize);
-            find(Integer.parseInt(searchText),pageSize);
+            String[] range = searchText.split("\\s+");
+            // full scan of the heap file, the ID index is not used
+            if(range.length == 2 && "scan".equalsIgnoreCase(range[0]) && !DbUtil.notNumber(range[1])){
+                doSearch(range[1], pageSize);
+                continue;
+            }
+            if(range.length == 2 && "delete".equalsIgnoreCase(range[0]) && !DbUtil.notNumber(range[1])){
+                delete(DbUtil.toInt(range[1]), pageSize);
+                continue;
+            }
+            if(range.length == 2 && !DbUtil.notNumber(range[0]) && !DbUtil.notNumber(range[1])){
+                indexSearch(IndexKey.ID, DbUtil.toInt(range[0]), DbUtil.toInt(range[1]), pageSize);
+                continue;
+            }
+            if(secondarySearch(searchText, pageSize) || aggregate(searchText)){
+                continue;
+            }
+            if(DbUtil.notNumber(searchText)){
+                System.err.println("invalid id: " + searchText);
+                continue;
+            }
+            find(DbUtil.toInt(searchText), pageSize);
+        }
+        try {
+            for (IndexFile index : indexes.values()) {
+                index.close();
+            }
+            heapChannel.close();
+            if (mappedHeap != null) {
+                mappedHeap.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
         System.out.println("DB query program finished ...");
     }
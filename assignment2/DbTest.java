@@ -1,6 +1,6 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -13,8 +13,6 @@ class DbTest {
     public static void main(String[] args) {
 //        String path = "Pedestrian_Counting_System_-_Monthly__counts_per_hour_.csv";
         String path = "/Users/nick/Desktop/assign/as/Pedestrian_Counting_System_-_Monthly__counts_per_hour_.csv";
-        String line;
-        final String comma = ",";
 
         // calculate the max length for String attributes: DATE_TIME, MONTH, DAY, SENSOR_NAME
         int dateTimeMax = 0;
@@ -23,9 +21,7 @@ class DbTest {
         int sensorNameMax = 0;
 
         int count = 0;
-        // header in the csv file
-        int id, year, mDate, time, sensorId, hourlyCounts;
-        String dateTime, month, day, sensorName;
+        String dateTime;
         // new field SDT_NAME: Sensor_ID + DATE_TIME as String
         String sdtName;
         // column index in the csv file
@@ -34,35 +30,24 @@ class DbTest {
 
         Map<String, Integer> sdtMap = new HashMap<>();
 
-        //parsing a CSV file into BufferedReader class constructor
+        //parsing a CSV file with the byte-level tokenizer, quoted sensor names may hold commas
         try (
                 // auto closable without having to code finally code block
-                BufferedReader br = new BufferedReader(new FileReader(path));
+                InputStream in = new FileInputStream(path)
         ) {
-            String[] record;
+            CsvTokenizer record = new CsvTokenizer(in);
             // when reading csv file, the 1st line is always header
-            boolean isHeader = true;
+            record.nextLine();
 
-            // marking start time when loading begins
-            while ((line = br.readLine()) != null) {
-                // skip header from writing
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
+            while (record.nextLine()) {
                 ++count;
-                // split each record as a String array
-                record = line.split(comma);
-                dateTime = record[dateTimeIdx];
-                month = record[monthIdx];
-                day = record[dayIdx];
-                sensorName = record[sensorNameIdx];
-                sdtName = record[sensorIdIdx] + dateTime;
+                dateTime = record.getString(dateTimeIdx);
+                sdtName = record.getString(sensorIdIdx) + dateTime;
 
                 dateTimeMax = Math.max(dateTimeMax, dateTime.length());
-                monthMax = Math.max(monthMax, month.length());
-                dayMax = Math.max(dayMax, day.length());
-                sensorNameMax = Math.max(sensorNameMax, sensorName.length());
+                monthMax = Math.max(monthMax, record.length(monthIdx));
+                dayMax = Math.max(dayMax, record.length(dayIdx));
+                sensorNameMax = Math.max(sensorNameMax, record.length(sensorNameIdx));
 
                 if (!sdtMap.containsKey(sdtName)) {
                     sdtMap.put(sdtName, 1);
@@ -1,6 +1,10 @@
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 /**
  * DB utility class provides several helper functions for DB loading and DB querying
@@ -12,11 +16,13 @@ import java.nio.charset.Charset;
  * @since 11-April-2021
  */
 public class DbUtil {
+
     /**
      * verify if provided str can be converted into integer number
      *
      * @param str string needs to be verified
      * @return true if can not be covert to number, false can be converted to number
+     * a run of digits larger than Integer.MAX_VALUE can not be converted
      */
     static boolean notNumber(String str) {
         if (str == null || str.length() <= 0) {
@@ -31,7 +37,12 @@ public class DbUtil {
                 return true;
             }
         }
-        return false;
+        try {
+            Integer.parseInt(str);
+            return false;
+        } catch (NumberFormatException e) {
+            return true;
+        }
     }
 
     /**
@@ -61,44 +72,175 @@ public class DbUtil {
     }
 
     /**
-     * convert int data type variable into byte array, which then save as
-     * raw data into the disk
-     * important - code reference:
-     * https://javadeveloperzone.com/java-basic/java-convert-int-to-byte-array/
+     * convert byte array into String
      *
-     * @param i int data type needs conversion to byte array
-     * @return byte array
+     * @param bytes   byte array needs conversion
+     * @param offset  starting point where conversion begins
+     * @param len     the number of bytes from offset needs conversion
+     * @param charset charset used for decoding or conversion
+     * @return new String converted from bytes array
      */
-    static byte[] intToBytes(final int i) {
-        ByteBuffer buffer = ByteBuffer.allocate(Record.INT_SIZE);
-        buffer.putInt(i);
-        return buffer.array();
+    static String bytesToStr(byte[] bytes, int offset, int len, Charset charset) {
+        // trim the zero padding and white spaces on the bytes, so only one String is created
+        int end = offset + len;
+        while (end > offset && (bytes[end - 1] & 0xFF) <= ' ') {
+            --end;
+        }
+        while (offset < end && (bytes[offset] & 0xFF) <= ' ') {
+            ++offset;
+        }
+        return new String(bytes, offset, end - offset, charset);
     }
 
     /**
-     * convert byte array into 4 bytes int
-     * important - code reference:
-     * https://stackoverflow.com/questions/7619058/convert-a-byte-array-to-integer-in-java-and-vice-versa
+     * build the record id of a record from its page number and slot within the page
+     * the page number is kept in the high 32 bits and the slot in the low 32 bits
      *
-     * @param bytes  byte array needs conversion
-     * @param offset starting point where conversion begins
-     * @param len    the number of bytes from offset needs conversion
-     * @return int number converted from bytes array
+     * @param pageNo page number in the heap file
+     * @param slot   slot of the record within the page
+     * @return record id
      */
-    static int bytesToInt(byte[] bytes, int offset, int len) {
-        return ByteBuffer.wrap(bytes, offset, len).getInt();
+    static long toRid(int pageNo, int slot) {
+        return ((long) pageNo << 32) | slot;
     }
 
     /**
-     * convert byte array into String
+     * @param rid record id
+     * @return page number of the record id
+     */
+    static int ridPage(long rid) {
+        return (int) (rid >>> 32);
+    }
+
+    /**
+     * @param rid record id
+     * @return slot within the page of the record id
+     */
+    static int ridSlot(long rid) {
+        return (int) rid;
+    }
+
+    /**
+     * convert a month name stored in a record into its number, "January" -> 1, only the first 3 letters are read
      *
-     * @param bytes   byte array needs conversion
+     * @param buffer buffer holding the month name
+     * @param offset starting point of the month name
+     * @return month number 1 ~ 12, 0 if it is not a month name
+     */
+    static int monthNumber(ByteBuffer buffer, int offset) {
+        // first 3 letters of each month, lower case
+        return nameNumber(buffer, offset, "janfebmaraprmayjunjulaugsepoctnovdec");
+    }
+
+    /**
+     * convert a day name stored in a record into its number, "Monday" -> 1, only the first 3 letters are read
+     *
+     * @param buffer buffer holding the day name
+     * @param offset starting point of the day name
+     * @return day number 1 ~ 7 from Monday to Sunday, 0 if it is not a day name
+     */
+    static int dayNumber(ByteBuffer buffer, int offset) {
+        // first 3 letters of each day, lower case
+        return nameNumber(buffer, offset, "montuewedthufrisatsun");
+    }
+
+    /**
+     * @return 1-based index of the first 3 letters at offset in names, compared case-insensitively, 0 if not found
+     */
+    private static int nameNumber(ByteBuffer buffer, int offset, String names) {
+        for (int n = 0; n < names.length() / 3; n++) {
+            boolean match = true;
+            for (int i = 0; i < 3 && match; i++) {
+                match = (buffer.get(offset + i) | 0x20) == names.charAt(n * 3 + i);
+            }
+            if (match) {
+                return n + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * pack a DATE_TIME text, e.g. "09/24/2010 05:00:00 PM", into seconds since 1970-01-01 00:00
+     * only this exact format of Record.DATE_TIME_SIZE characters is packed, so formatDateTime gives back the same text
+     *
+     * @param bytes  bytes of the text
+     * @param offset starting point of the text
+     * @param len    number of bytes of the text
+     * @return seconds since 1970-01-01 00:00, the date time is not bound to a time zone
+     * @throws IllegalArgumentException if the text is not a date time in this format
+     */
+    static int packDateTime(byte[] bytes, int offset, int len) {
+        final String pattern = "00/00/0000 00:00:00 AM";
+        boolean valid = len == pattern.length();
+        for (int i = 0; i < pattern.length() && valid; i++) {
+            byte b = bytes[offset + i];
+            char p = pattern.charAt(i);
+            valid = p == '0' ? b >= '0' && b <= '9' : p == 'A' ? b == 'A' || b == 'P' : p == 'M' ? b == 'M' : b == p;
+        }
+        int hour = valid ? digits(bytes, offset + 11, 2) : 0;
+        if (!valid || hour < 1 || hour > 12) {
+            throw new IllegalArgumentException("DATE_TIME is not MM/dd/yyyy hh:mm:ss AM: " + new String(bytes, offset, len));
+        }
+        // 12 AM is hour 0, 12 PM is hour 12
+        hour = hour % 12 + (bytes[offset + 20] == 'P' ? 12 : 0);
+        int minute = digits(bytes, offset + 14, 2), second = digits(bytes, offset + 17, 2);
+        try {
+            long day = LocalDate.of(digits(bytes, offset + 6, 4), digits(bytes, offset, 2), digits(bytes, offset + 3, 2)).toEpochDay();
+            if (minute > 59 || second > 59) {
+                throw new DateTimeException("invalid time");
+            }
+            return Math.toIntExact(day * 86400 + hour * 3600 + minute * 60 + second);
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("DATE_TIME can not be packed: " + new String(bytes, offset, len), e);
+        }
+    }
+
+    /**
+     * value of len decimal digits
+     */
+    private static int digits(byte[] bytes, int offset, int len) {
+        int value = 0;
+        for (int i = 0; i < len; i++) {
+            value = value * 10 + bytes[offset + i] - '0';
+        }
+        return value;
+    }
+
+    /**
+     * format a date time packed by packDateTime back into its text
+     *
+     * @param seconds seconds since 1970-01-01 00:00
+     * @return date time text, e.g. "09/24/2010 05:00:00 PM"
+     */
+    static String formatDateTime(int seconds) {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+        int hour = time.getHour() % 12 == 0 ? 12 : time.getHour() % 12;
+        return String.format("%02d/%02d/%04d %02d:%02d:%02d %s", time.getMonthValue(), time.getDayOfMonth(), time.getYear(),
+                hour, time.getMinute(), time.getSecond(), time.getHour() < 12 ? "AM" : "PM");
+    }
+
+    /**
+     * convert bytes of a buffer into String, trailing zero padding is removed before decoding
+     * the buffer position is not changed, works on heap and memory-mapped buffers
+     *
+     * @param buffer  buffer holding the bytes
      * @param offset  starting point where conversion begins
      * @param len     the number of bytes from offset needs conversion
      * @param charset charset used for decoding or conversion
-     * @return new String converted from bytes array
+     * @return new String converted from the buffer
      */
-    static String bytesToStr(byte[] bytes, int offset, int len, Charset charset) {
-        return new String(bytes, offset, len, charset).trim();
+    static String bytesToStr(ByteBuffer buffer, int offset, int len, Charset charset) {
+        if (buffer.hasArray()) {
+            return bytesToStr(buffer.array(), buffer.arrayOffset() + offset, len, charset);
+        }
+        while (len > 0 && buffer.get(offset + len - 1) == 0) {
+            --len;
+        }
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytesToStr(bytes, 0, len, charset);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Per-file dictionaries of the repeated String columns MONTH, DAY and SENSOR_NAME
+ * In a dictionary-encoded heap file each value of these columns is stored as a 1 or 2 bytes code,
+ * the code is the index of the value in the dictionary of its column. Codes are given in the order
+ * the values are first met while loading, the dictionaries are saved in the header page after the schema:
+ * for each column: entry count (short) | each entry: length (byte) | bytes
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class Dictionary {
+
+    /** dictionary-encoded columns */
+    static final Column[] COLUMNS = {Column.MONTH, Column.DAY, Column.SENSOR_NAME};
+
+    /**
+     * values of one column, looked up by their bytes through an open-addressing hash table
+     */
+    private static class Entries {
+        private final int maxCount;
+        private byte[][] values = new byte[16][];
+        private String[] strings = new String[16];
+        private int count = 0;
+        /** code + 1 of the value in each hash bucket, 0 for an empty bucket */
+        private int[] table = new int[32];
+
+        Entries(int codeSize) {
+            // the entry count is saved as a short
+            maxCount = Math.min(1 << (8 * codeSize), 0xFFFF);
+        }
+
+        int code(byte[] bytes, int len) {
+            int mask = table.length - 1;
+            for (int i = hash(bytes, len) & mask; table[i] != 0; i = (i + 1) & mask) {
+                byte[] value = values[table[i] - 1];
+                if (Arrays.equals(value, 0, value.length, bytes, 0, len)) {
+                    return table[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        int add(byte[] bytes, int len) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                strings = Arrays.copyOf(strings, count * 2);
+            }
+            values[count] = Arrays.copyOf(bytes, len);
+            strings[count] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+            ++count;
+            if (count * 2 > table.length) {
+                table = new int[table.length * 2];
+                for (int code = 0; code < count; code++) {
+                    put(code);
+                }
+            } else {
+                put(count - 1);
+            }
+            return count - 1;
+        }
+
+        private void put(int code) {
+            int mask = table.length - 1;
+            int i = hash(values[code], values[code].length) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = code + 1;
+        }
+
+        private static int hash(byte[] bytes, int len) {
+            int h = 1;
+            for (int i = 0; i < len; i++) {
+                h = 31 * h + bytes[i];
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * codes already given out, held by one encoding worker so a value met before is coded without the lock
+     */
+    public class Cache {
+        /** values seen by the worker, the index of a value in this table is its position in codes */
+        private final Entries[] seen = new Entries[Column.ALL.length];
+        private final int[][] codes = new int[Column.ALL.length][];
+
+        private Cache() {
+            for (Column column : COLUMNS) {
+                seen[column.ordinal()] = new Entries(column.codeSize);
+                codes[column.ordinal()] = new int[16];
+            }
+        }
+
+        /**
+         * get the code of a value, the shared dictionary is locked only for a value not seen by this worker yet
+         *
+         * @param column dictionary-encoded column
+         * @param bytes  bytes of the value, padding removed
+         * @param len    number of bytes of the value
+         * @return code of the value
+         * @throws IOException when the column has more distinct values than its code size can hold
+         */
+        public int code(Column column, byte[] bytes, int len) throws IOException {
+            int c = column.ordinal();
+            int i = seen[c].code(bytes, len);
+            if (i == -1) {
+                int code = Dictionary.this.code(column, bytes, len);
+                i = seen[c].add(bytes, len);
+                if (i == codes[c].length) {
+                    codes[c] = Arrays.copyOf(codes[c], i * 2);
+                }
+                codes[c][i] = code;
+            }
+            return codes[c][i];
+        }
+    }
+
+    private final Entries[] entries = new Entries[Column.ALL.length];
+    /** cache of each encoding worker thread */
+    private final ThreadLocal<Cache> caches = ThreadLocal.withInitial(Cache::new);
+
+    public Dictionary() {
+        for (Column column : COLUMNS) {
+            entries[column.ordinal()] = new Entries(column.codeSize);
+        }
+    }
+
+    /**
+     * get the code of a value, a new value is added to the dictionary of the column
+     * safe to call from many encoding workers, which go through their cache to avoid the lock
+     *
+     * @param column dictionary-encoded column
+     * @param bytes  bytes of the value, padding removed
+     * @param len    number of bytes of the value
+     * @return code of the value
+     * @throws IOException when the column has more distinct values than its code size can hold
+     */
+    public synchronized int code(Column column, byte[] bytes, int len) throws IOException {
+        Entries values = entries[column.ordinal()];
+        int code = values.code(bytes, len);
+        if (code == -1) {
+            if (values.count == values.maxCount) {
+                throw new IOException("more than " + values.maxCount + " distinct values of " + column);
+            }
+            code = values.add(bytes, len);
+        }
+        return code;
+    }
+
+    /**
+     * @return cache of the calling thread
+     */
+    public Cache cache() {
+        return caches.get();
+    }
+
+    /**
+     * @param column dictionary-encoded column
+     * @param code   code read from a record
+     * @return value of the code
+     */
+    public String value(Column column, int code) {
+        Entries values = entries[column.ordinal()];
+        return code < values.count ? values.strings[code] : "";
+    }
+
+    /**
+     * @param column dictionary-encoded column
+     * @param code   code read from a record
+     * @return bytes of the value of the code, not copied
+     */
+    public byte[] bytes(Column column, int code) {
+        Entries values = entries[column.ordinal()];
+        return code < values.count ? values.values[code] : new byte[0];
+    }
+
+    /**
+     * @return number of bytes written by write
+     */
+    public synchronized int byteSize() {
+        int size = 0;
+        for (Column column : COLUMNS) {
+            Entries values = entries[column.ordinal()];
+            size += Short.BYTES + values.count;
+            for (int code = 0; code < values.count; code++) {
+                size += values.values[code].length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * write the dictionaries at the position of the page
+     *
+     * @param page header page
+     */
+    public synchronized void write(ByteBuffer page) {
+        for (Column column : COLUMNS) {
+            Entries values = entries[column.ordinal()];
+            page.putShort((short) values.count);
+            for (int code = 0; code < values.count; code++) {
+                page.put((byte) values.values[code].length);
+                page.put(values.values[code]);
+            }
+        }
+    }
+
+    /**
+     * read the dictionaries written by write at the position of the page
+     *
+     * @param page header page
+     * @return dictionaries of the heap file
+     * @throws IOException when the dictionaries are truncated
+     */
+    public static Dictionary read(ByteBuffer page) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        byte[] bytes = new byte[256];
+        try {
+            for (Column column : COLUMNS) {
+                int count = page.getShort() & 0xFFFF;
+                for (int code = 0; code < count; code++) {
+                    int len = page.get() & 0xFF;
+                    page.get(bytes, 0, len);
+                    dictionary.entries[column.ordinal()].add(bytes, len);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("heap file dictionary is corrupted", e);
+        }
+        return dictionary;
+    }
+}
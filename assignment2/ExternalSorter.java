@@ -0,0 +1,378 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort of (key, record id) pairs by key, used to build an index file
+ * Entries are added to an in-memory run of at most runSize entries, a full run is sorted and spilled
+ * to a temporary file, and the runs are merged with a priority queue when the sorted entries are read,
+ * in several passes of at most MERGE_WIDTH runs when there are more.
+ * Input that fits in one run is never written to disk, and a run already in key order is not sorted.
+ * The sort is stable, entries with equal keys keep their input order, i.e. record id order.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class ExternalSorter implements AutoCloseable {
+
+    /** number of entries sorted in memory per run, 4M entries = 64MB, about the size of the full count dataset */
+    static final int DEFAULT_RUN_SIZE = 1 << 22;
+    /** maximum number of runs merged at once, more runs are merged in several passes to bound the open files */
+    static final int MERGE_WIDTH = 64;
+
+    private final int runSize;
+    private long[] keys = new long[4096];
+    private long[] values = new long[4096];
+    /** number of entries in the current run */
+    private int n = 0;
+    /** true while the entries of the current run are in key order */
+    private boolean sorted = true;
+    /** number of entries added */
+    private long size = 0;
+    /** spilled runs in input order */
+    private final List<File> runs = new ArrayList<>();
+    /** open readers of the spilled runs */
+    private final List<FileRun> readers = new ArrayList<>();
+
+    /**
+     * @param runSize number of entries sorted in memory per run
+     */
+    public ExternalSorter(int runSize) {
+        if (runSize < 1) {
+            System.out.print("The run size must be greater than 0");
+            System.exit(1);
+        }
+        this.runSize = runSize;
+    }
+
+    /**
+     * add one entry, the current run is spilled when it is full
+     *
+     * @param key   key
+     * @param value record id
+     * @throws IOException when spilling a run fails
+     */
+    public void add(long key, long value) throws IOException {
+        if (n == runSize) {
+            spill();
+        }
+        if (n == keys.length) {
+            keys = Arrays.copyOf(keys, (int) Math.min((long) n * 2, runSize));
+            values = Arrays.copyOf(values, keys.length);
+        }
+        sorted &= n == 0 || key >= keys[n - 1];
+        keys[n] = key;
+        values[n++] = value;
+        ++size;
+    }
+
+    /**
+     * @return number of entries added
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if no run had to be written to disk
+     */
+    public boolean inMemory() {
+        return runs.isEmpty();
+    }
+
+    /**
+     * Sort the entries added so far, no entry can be added afterwards
+     *
+     * @return cursor over the entries in key order
+     * @throws IOException when spilling or reading a run fails
+     */
+    public Cursor sorted() throws IOException {
+        if (!sorted) {
+            sort(keys, values, n);
+        }
+        sorted = true;
+        if (runs.isEmpty()) {
+            return new Cursor(new Run[]{new MemoryRun(keys, values, n)});
+        }
+        spill();
+        while (runs.size() > MERGE_WIDTH) {
+            List<File> merged = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MERGE_WIDTH) {
+                merged.add(merge(runs.subList(i, Math.min(i + MERGE_WIDTH, runs.size()))));
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+        return open(runs);
+    }
+
+    /**
+     * @param files runs in input order
+     * @return cursor merging the runs
+     */
+    private Cursor open(List<File> files) throws IOException {
+        Run[] sources = new Run[files.size()];
+        for (int i = 0; i < sources.length; i++) {
+            FileRun reader = new FileRun(files.get(i), i);
+            readers.add(reader);
+            sources[i] = reader;
+        }
+        return new Cursor(sources);
+    }
+
+    /**
+     * merge consecutive runs into one run file, the merged run files are deleted
+     *
+     * @param files runs in input order
+     * @return the merged run
+     */
+    private File merge(List<File> files) throws IOException {
+        if (files.size() == 1) {
+            return files.get(0);
+        }
+        File file = File.createTempFile("index-run-", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            Cursor cursor = open(files);
+            while (cursor.next()) {
+                out.writeLong(cursor.key);
+                out.writeLong(cursor.value);
+            }
+        } catch (IOException e) {
+            if (!file.delete()) {
+                System.err.println("could not delete run file " + file);
+            }
+            throw e;
+        } finally {
+            closeReaders();
+        }
+        for (File run : files) {
+            if (!run.delete()) {
+                System.err.println("could not delete run file " + run);
+            }
+        }
+        return file;
+    }
+
+    private void closeReaders() {
+        for (FileRun reader : readers) {
+            try {
+                reader.in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        readers.clear();
+    }
+
+    /**
+     * sort the current run and write it to a temporary file
+     */
+    private void spill() throws IOException {
+        if (!sorted) {
+            sort(keys, values, n);
+        }
+        File file = File.createTempFile("index-run-", ".tmp");
+        runs.add(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            for (int i = 0; i < n; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(values[i]);
+            }
+        }
+        n = 0;
+        sorted = true;
+    }
+
+    /**
+     * close the readers and delete the temporary run files
+     */
+    @Override
+    public void close() {
+        closeReaders();
+        for (File run : runs) {
+            if (!run.delete()) {
+                System.err.println("could not delete run file " + run);
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Stable bottom-up merge sort of keys with their values, equal keys stay in input order
+     *
+     * @param keys   keys
+     * @param values value of each key
+     * @param n      number of entries
+     */
+    static void sort(long[] keys, long[] values, int n) {
+        long[] keyTmp = new long[n];
+        long[] valueTmp = new long[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n; low += 2 * width) {
+                int mid = Math.min(low + width, n), high = Math.min(low + 2 * width, n);
+                int i = low, j = mid, k = low;
+                while (i < mid && j < high) {
+                    if (keys[j] < keys[i]) {
+                        keyTmp[k] = keys[j];
+                        valueTmp[k++] = values[j++];
+                    } else {
+                        keyTmp[k] = keys[i];
+                        valueTmp[k++] = values[i++];
+                    }
+                }
+                while (i < mid) {
+                    keyTmp[k] = keys[i];
+                    valueTmp[k++] = values[i++];
+                }
+                while (j < high) {
+                    keyTmp[k] = keys[j];
+                    valueTmp[k++] = values[j++];
+                }
+            }
+            System.arraycopy(keyTmp, 0, keys, 0, n);
+            System.arraycopy(valueTmp, 0, values, 0, n);
+        }
+    }
+
+    /**
+     * Cursor over the sorted entries, merging the runs
+     */
+    public static class Cursor {
+        /** runs holding an entry, ordered by key then by run, so equal keys come out in input order */
+        private final PriorityQueue<Run> queue = new PriorityQueue<>((a, b) ->
+                a.key != b.key ? Long.compare(a.key, b.key) : Integer.compare(a.order, b.order));
+        /** the only run, read without the queue */
+        private final Run single;
+        private long key;
+        private long value;
+
+        private Cursor(Run[] runs) throws IOException {
+            single = runs.length == 1 ? runs[0] : null;
+            if (single != null) {
+                return;
+            }
+            for (Run run : runs) {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        /**
+         * move to the next entry
+         *
+         * @return false when every entry has been read
+         * @throws IOException when reading a run fails
+         */
+        public boolean next() throws IOException {
+            if (single != null) {
+                if (!single.advance()) {
+                    return false;
+                }
+                key = single.key;
+                value = single.value;
+                return true;
+            }
+            Run run = queue.poll();
+            if (run == null) {
+                return false;
+            }
+            key = run.key;
+            value = run.value;
+            if (run.advance()) {
+                queue.add(run);
+            }
+            return true;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * one sorted run, positioned on its current entry
+     */
+    private abstract static class Run {
+        /** position of the run in the input */
+        final int order;
+        long key;
+        long value;
+
+        Run(int order) {
+            this.order = order;
+        }
+
+        /**
+         * move to the next entry of the run
+         *
+         * @return false when the run is exhausted
+         */
+        abstract boolean advance() throws IOException;
+    }
+
+    /**
+     * the only run, kept in memory
+     */
+    private static class MemoryRun extends Run {
+        private final long[] keys;
+        private final long[] values;
+        private final int n;
+        private int idx = 0;
+
+        MemoryRun(long[] keys, long[] values, int n) {
+            super(0);
+            this.keys = keys;
+            this.values = values;
+            this.n = n;
+        }
+
+        @Override
+        boolean advance() {
+            if (idx == n) {
+                return false;
+            }
+            key = keys[idx];
+            value = values[idx++];
+            return true;
+        }
+    }
+
+    /**
+     * a run spilled to a temporary file
+     */
+    private static class FileRun extends Run {
+        private final DataInputStream in;
+
+        FileRun(File file, int order) throws IOException {
+            super(order);
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                key = in.readLong();
+                value = in.readLong();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.time.DayOfWeek;
+import java.time.Month;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * Grouping attributes of the aggregation on HOURLY_COUNTS
+ * every group is keyed by an int: the value of an int column, or the number of a MONTH or DAY name
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public enum GroupBy {
+    SENSOR(Column.SENSOR_ID),
+    YEAR(Column.YEAR),
+    /** month number 1 ~ 12, see DbUtil.monthNumber */
+    MONTH(Column.MONTH),
+    /** day number 1 ~ 7 from Monday, see DbUtil.dayNumber */
+    DAY(Column.DAY),
+    /** TIME, the hour 0 ~ 23 */
+    HOUR(Column.TIME);
+
+    /** column read to compute the group key */
+    final Column column;
+
+    GroupBy(Column column) {
+        this.column = column;
+    }
+
+    /**
+     * @param key group key
+     * @return name of the group, e.g. "March" for the MONTH key 3
+     */
+    String label(int key) {
+        switch (this) {
+            case MONTH:
+                return key >= 1 && key <= 12 ? Month.of(key).getDisplayName(TextStyle.FULL, Locale.ENGLISH) : "unknown";
+            case DAY:
+                return key >= 1 && key <= 7 ? DayOfWeek.of(key).getDisplayName(TextStyle.FULL, Locale.ENGLISH) : "unknown";
+            default:
+                return String.valueOf(key);
+        }
+    }
+
+    /**
+     * @param text grouping attribute typed at the prompt, e.g. "sensor"
+     * @return the grouping attribute, null if there is none of this name
+     */
+    static GroupBy parse(String text) {
+        for (GroupBy groupBy : values()) {
+            if (groupBy.name().equalsIgnoreCase(text)) {
+                return groupBy;
+            }
+        }
+        return null;
+    }
+}
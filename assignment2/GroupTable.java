@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * Hash aggregation table of HOURLY_COUNTS keyed by an int group key
+ * Open addressing with linear probing over parallel primitive arrays, adding a value never creates an object.
+ * Each scan task fills its own table, the tables are merged when the tasks are joined.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class GroupTable {
+
+    private int[] keys = new int[64];
+    /** number of values of each group, 0 for an empty bucket */
+    private long[] counts = new long[64];
+    private long[] sums = new long[64];
+    private int[] maxes = new int[64];
+    private int size = 0;
+
+    /**
+     * add one value to its group
+     *
+     * @param key   group key
+     * @param value HOURLY_COUNTS of one record
+     */
+    public void add(int key, int value) {
+        int i = bucket(key);
+        if (counts[i] == 0) {
+            keys[i] = key;
+            maxes[i] = value;
+            if (++size * 2 > keys.length) {
+                counts[i] = 1;
+                sums[i] = value;
+                grow();
+                return;
+            }
+        } else if (value > maxes[i]) {
+            maxes[i] = value;
+        }
+        ++counts[i];
+        sums[i] += value;
+    }
+
+    /**
+     * add the groups of another table into this table
+     *
+     * @param other table of another page range
+     * @return this table
+     */
+    public GroupTable merge(GroupTable other) {
+        for (int j = 0; j < other.keys.length; j++) {
+            if (other.counts[j] != 0) {
+                merge(other.keys[j], other.counts[j], other.sums[j], other.maxes[j]);
+            }
+        }
+        return this;
+    }
+
+    private void merge(int key, long count, long sum, int max) {
+        int i = bucket(key);
+        if (counts[i] == 0) {
+            keys[i] = key;
+            maxes[i] = max;
+            ++size;
+        } else if (max > maxes[i]) {
+            maxes[i] = max;
+        }
+        counts[i] += count;
+        sums[i] += sum;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * @return bucket holding the key, or the empty bucket where it goes
+     */
+    private int bucket(int key) {
+        int mask = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int i = (h ^ h >>> 16) & mask;
+        while (counts[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys, oldMaxes = maxes;
+        long[] oldCounts = counts, oldSums = sums;
+        keys = new int[oldKeys.length * 2];
+        counts = new long[keys.length];
+        sums = new long[keys.length];
+        maxes = new int[keys.length];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldCounts[j] != 0) {
+                int i = bucket(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+                sums[i] = oldSums[j];
+                maxes[i] = oldMaxes[j];
+            }
+        }
+    }
+
+    /**
+     * @return number of groups
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return group keys in ascending order
+     */
+    public int[] sortedKeys() {
+        int[] sorted = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                sorted[n++] = keys[i];
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @param key group key
+     * @return number of values of the group
+     */
+    public long count(int key) {
+        return counts[bucket(key)];
+    }
+
+    /**
+     * @param key group key
+     * @return sum of the values of the group
+     */
+    public long sum(int key) {
+        return sums[bucket(key)];
+    }
+
+    /**
+     * @param key group key
+     * @return largest value of the group
+     */
+    public int max(int key) {
+        return maxes[bucket(key)];
+    }
+
+    /**
+     * @param key group key
+     * @return average of the values of the group
+     */
+    public double average(int key) {
+        int i = bucket(key);
+        return counts[i] == 0 ? 0 : (double) sums[i] / counts[i];
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Heap file format, e.g. heap.40960
+ * <p>
+ * page 0 - file header
+ * magic | version | page size | record size | layout | page count | record count (long) | field count | fields
+ * | dictionaries of a dictionary-encoded file
+ * each field of the schema: type (see Column) | size (int) | name length (byte) | name
+ * <p>
+ * page 1 ~ page count - 1: slotted data pages
+ * page header (16 bytes): record count | free space offset | CRC32 checksum | reserved
+ * records are fixed-size, so the slot directory is implicit, the records are placed in the page by the
+ * layout of the file, see PageLayout. In the row layout slot i starts at PAGE_HEADER_SIZE + i * record size,
+ * and the free space offset is the end of the last used slot. The checksum covers the page header
+ * before the checksum and the used slots, the free space after the last slot is always 0.
+ * Record ids use the file page number, so the first record is at (page 1, slot 0).
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class HeapFile {
+
+    static final int MAGIC = 0x44424850;
+    static final int VERSION = 1;
+
+    /**
+     * record layout in the data pages: whole records, or one minipage per column
+     */
+    static final int ROW_LAYOUT = 0;
+    static final int PAX_LAYOUT = 1;
+
+    /**
+     * offset for each attribute in the file header page
+     */
+    static final int PAGE_SIZE_OFFSET = 8;
+    static final int RECORD_SIZE_OFFSET = 12;
+    static final int LAYOUT_OFFSET = 16;
+    static final int PAGE_COUNT_OFFSET = 20;
+    static final int RECORD_COUNT_OFFSET = 24;
+    static final int FIELD_COUNT_OFFSET = 32;
+    static final int FIELDS_OFFSET = 36;
+
+    /**
+     * offset for each attribute in the data page header
+     */
+    static final int COUNT_OFFSET = 0;
+    static final int FREE_OFFSET = 4;
+    static final int CHECKSUM_OFFSET = 8;
+    static final int PAGE_HEADER_SIZE = 16;
+
+    /**
+     * page number of the first data page
+     */
+    static final int FIRST_PAGE = 1;
+
+    /**
+     * the smallest file header, the schema must fit in page 0
+     */
+    private static final int MIN_PAGE_SIZE = 512;
+
+    /**
+     * content of the file header page
+     */
+    static class Header {
+        final int pageSize;
+        final int layout;
+        /** number of pages in the file, header page included */
+        final int pageCount;
+        final long recordCount;
+        /** null when the values are stored as they are */
+        final Dictionary dictionary;
+
+        Header(int pageSize, int layout, int pageCount, long recordCount, Dictionary dictionary) {
+            this.pageSize = pageSize;
+            this.layout = layout;
+            this.pageCount = pageCount;
+            this.recordCount = recordCount;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @return placement of the records in the data pages of the file
+         */
+        PageLayout pageLayout() {
+            return new PageLayout(layout, pageSize, dictionary);
+        }
+    }
+
+    /**
+     * @param page data page
+     * @return number of records in the page
+     */
+    static int recordCount(ByteBuffer page) {
+        return page.getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * verify the page size can hold the file header and at least one record
+     *
+     * @param pageSize page size of the heap file
+     * @param layout   record layout in the data pages
+     * @return true if the page size is supported
+     */
+    static boolean validPageSize(int pageSize, int layout) {
+        return pageSize >= MIN_PAGE_SIZE && new PageLayout(layout, pageSize).getCapacity() > 0;
+    }
+
+    /**
+     * write the file header into page 0
+     *
+     * @param page        page buffer of 1 page-size, cleared before writing
+     * @param layout      page layout of the heap file, with its dictionaries if the file is dictionary-encoded
+     * @param pageCount   number of pages in the file, header page included
+     * @param recordCount number of records in the file
+     * @throws IOException when the dictionaries do not fit in the header page
+     */
+    static void writeHeader(ByteBuffer page, PageLayout layout, int pageCount, long recordCount) throws IOException {
+        Dictionary dictionary = layout.getDictionary();
+        clear(page);
+        page.putInt(0, MAGIC);
+        page.putInt(4, VERSION);
+        page.putInt(PAGE_SIZE_OFFSET, layout.getPageSize());
+        page.putInt(RECORD_SIZE_OFFSET, layout.getRecordSize());
+        page.putInt(LAYOUT_OFFSET, layout.getLayout());
+        page.putInt(PAGE_COUNT_OFFSET, pageCount);
+        page.putLong(RECORD_COUNT_OFFSET, recordCount);
+        page.putInt(FIELD_COUNT_OFFSET, Column.ALL.length);
+        page.position(FIELDS_OFFSET);
+        for (Column column : Column.ALL) {
+            byte[] name = column.name().getBytes(StandardCharsets.US_ASCII);
+            page.put((byte) (dictionary != null ? column.codeType : column.type));
+            page.putInt(layout.size(column));
+            page.put((byte) name.length);
+            page.put(name);
+        }
+        if (dictionary != null) {
+            if (dictionary.byteSize() > page.remaining()) {
+                throw new IOException("the dictionaries of " + dictionary.byteSize() + " bytes do not fit in the header page, use a larger page size");
+            }
+            dictionary.write(page);
+        }
+        page.clear();
+    }
+
+    /**
+     * read and verify the file header of a heap file
+     *
+     * @param channel heap file channel
+     * @return file header
+     * @throws IOException when the file is not a heap file of this version or its schema differs from Record
+     */
+    static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MIN_PAGE_SIZE);
+        readFully(channel, header);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("not a heap file of version " + VERSION + ", load it again with DbLoad");
+        }
+        int pageSize = header.getInt(PAGE_SIZE_OFFSET);
+        int layout = header.getInt(LAYOUT_OFFSET);
+        if ((layout != ROW_LAYOUT && layout != PAX_LAYOUT) || !validPageSize(pageSize, layout)) {
+            throw new IOException("unknown layout " + layout + " or page size " + pageSize + " in the heap file header");
+        }
+        // the dictionaries may fill the whole header page
+        header = ByteBuffer.allocate(pageSize);
+        readFully(channel, header);
+        if (header.getInt(FIELD_COUNT_OFFSET) != Column.ALL.length) {
+            throw new IOException("heap file schema does not match the record");
+        }
+        // the schema holds either the Record attributes or their codes
+        header.position(FIELDS_OFFSET);
+        boolean plain = true, encoded = true;
+        for (Column column : Column.ALL) {
+            char type = (char) header.get();
+            int size = header.getInt();
+            byte[] name = new byte[header.get()];
+            header.get(name);
+            plain &= type == column.type && size == column.size;
+            encoded &= type == column.codeType && size == column.codeSize;
+            if (!(plain || encoded) || !column.name().equals(new String(name, StandardCharsets.US_ASCII))) {
+                throw new IOException("heap file schema does not match the record at column " + column);
+            }
+        }
+        Dictionary dictionary = plain ? null : Dictionary.read(header);
+        if (header.getInt(RECORD_SIZE_OFFSET) != new PageLayout(layout, pageSize, dictionary).getRecordSize()) {
+            throw new IOException("heap file schema does not match the record");
+        }
+        return new Header(pageSize, layout, header.getInt(PAGE_COUNT_OFFSET),
+                header.getLong(RECORD_COUNT_OFFSET), dictionary);
+    }
+
+    /**
+     * read from the start of the file until the buffer is full or the file ends
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) != -1) {
+            // keep reading until the header is in the buffer
+        }
+    }
+
+    /**
+     * read the file header of a heap file
+     *
+     * @param path heap file path
+     * @return file header
+     * @throws IOException when the file can not be read or is not a heap file
+     */
+    static Header readHeader(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return readHeader(channel);
+        }
+    }
+
+    /**
+     * set every byte of the page to 0
+     */
+    static void clear(ByteBuffer page) {
+        page.clear();
+        while (page.remaining() >= Long.BYTES) {
+            page.putLong(0L);
+        }
+        while (page.hasRemaining()) {
+            page.put((byte) 0);
+        }
+        page.clear();
+    }
+}
@@ -0,0 +1,854 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Disk-resident B+ tree index file, e.g. heap.40960.idx
+ * The index file uses the same page size as the heap file, every page is a fixed-layout node.
+ * Keys are long values computed from the record by an IndexKey, and may be duplicated for secondary indexes,
+ * duplicated keys are kept in record id order. Entries are never inserted once the file is built,
+ * but an index file opened for writing can remove entries, see remove.
+ * <p>
+ * page 0 - file header
+ * magic | version | page size | root page | height | entry count | first leaf page
+ * <p>
+ * node page header (16 bytes)
+ * type (0 internal, 1 leaf) | entry count | next leaf page (-1 if none) | reserved
+ * <p>
+ * leaf page body: key (long) + value (long) pairs, sorted by key, the value is the record id (page number, slot) of the heap file
+ * internal page body: child[0], then key[i] (long) + child[i + 1] (int) pairs, key[i] is the first key under child[i + 1]
+ * when the file is built, afterwards the keys under child[i] are at most key[i] and the keys under child[i + 1] at least key[i]
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class IndexFile implements AutoCloseable {
+
+    static final int MAGIC = 0x44424958;
+    static final int VERSION = 4;
+
+    static final byte INTERNAL = 0;
+    static final byte LEAF = 1;
+
+    /**
+     * offset for each attribute in the node page header
+     */
+    static final int TYPE_OFFSET = 0;
+    static final int COUNT_OFFSET = 4;
+    static final int NEXT_OFFSET = 8;
+    static final int NODE_HEADER_SIZE = 16;
+    static final int LONG_SIZE = 8;
+    /**
+     * leaf entry = key (long) + value (long)
+     */
+    static final int LEAF_ENTRY_SIZE = LONG_SIZE * 2;
+    /**
+     * internal entry = key (long) + child page (int)
+     */
+    static final int INTERNAL_ENTRY_SIZE = LONG_SIZE + Record.INT_SIZE;
+
+    /**
+     * value returned by find when the key is not in the index
+     */
+    static final long NOT_FOUND = -1L;
+
+    /**
+     * fraction of each page filled by build, the index files are never inserted into so the pages are filled up
+     */
+    static final double DEFAULT_FILL_FACTOR = 1.0;
+
+    private final FileChannel channel;
+    private final ByteBuffer page;
+    private final int pageSize;
+    private final boolean writable;
+    private int rootPage;
+    private int height;
+    private long entryCount;
+    /** number of pages read since the index file was opened, header page excluded */
+    private long pageReads = 0;
+    /** shared buffer pool the node pages are read through, null to read straight from the file */
+    private final BufferPool pool;
+    private final int fileId;
+
+    /**
+     * Open an existing index file and read its header page
+     *
+     * @param path index file path
+     * @throws IOException when the file can not be read or is not an index file
+     */
+    public IndexFile(String path) throws IOException {
+        this(path, null);
+    }
+
+    /**
+     * Open an existing index file, node pages are read through the buffer pool
+     *
+     * @param path index file path
+     * @param pool shared buffer pool, not used if its page size differs from the index file
+     * @throws IOException when the file can not be read or is not an index file
+     */
+    public IndexFile(String path, BufferPool pool) throws IOException {
+        this(path, pool, false);
+    }
+
+    /**
+     * Open an existing index file, node pages are read through the buffer pool
+     *
+     * @param path     index file path
+     * @param pool     shared buffer pool, not used if its page size differs from the index file
+     * @param writable true to open the file for writing, so entries can be removed
+     * @throws IOException when the file can not be opened or is not an index file
+     */
+    public IndexFile(String path, BufferPool pool, boolean writable) throws IOException {
+        channel = writable ? FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.writable = writable;
+        ByteBuffer header = ByteBuffer.allocate(64);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("not a valid index file: " + path);
+        }
+        pageSize = header.getInt(8);
+        rootPage = header.getInt(12);
+        height = header.getInt(16);
+        entryCount = header.getLong(20);
+        page = ByteBuffer.allocate(pageSize);
+        this.pool = pool != null && pool.getPageSize() == pageSize ? pool : null;
+        fileId = this.pool != null ? this.pool.register(channel) : -1;
+    }
+
+    /**
+     * read one node page into the page buffer, through the buffer pool when there is one
+     *
+     * @param pageNo page number
+     * @param buffer page buffer
+     * @throws IOException when reading fails
+     */
+    private void readPage(int pageNo, ByteBuffer buffer) throws IOException {
+        ++pageReads;
+        if (pool != null) {
+            pool.read(fileId, pageNo, buffer);
+            return;
+        }
+        buffer.clear();
+        long pos = (long) pageNo * pageSize;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) == -1) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * get the matched value by key, descending from the root reads exactly height pages
+     *
+     * @param key search key
+     * @return matched value, NOT_FOUND if the key is not in the index
+     * @throws IOException when reading fails
+     */
+    public long find(long key) throws IOException {
+        if (height == 0) {
+            return NOT_FOUND;
+        }
+        descend(key, false, page);
+        // binary search in the leaf page
+        int low = 0, high = page.getInt(COUNT_OFFSET) - 1;
+        while (low <= high) {
+            int mid = low + (high - low) / 2;
+            int res = Long.compare(key, leafKey(page, mid));
+            if (res == 0) {
+                return leafValue(page, mid);
+            } else if (res < 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * descend from the root page to the leaf page which may hold the key
+     *
+     * @param key      search key
+     * @param leftmost true to reach the leftmost leaf page which may hold the key, needed when keys are duplicated
+     *                 across leaf pages, false to follow separators equal to the key to the right
+     * @param buffer   page buffer, holds the leaf page when returning
+     * @throws IOException when reading fails
+     */
+    private void descend(long key, boolean leftmost, ByteBuffer buffer) throws IOException {
+        readPage(rootPage, buffer);
+        while (buffer.get(TYPE_OFFSET) == INTERNAL) {
+            readPage(internalChild(buffer, childIndex(buffer, key, leftmost)), buffer);
+        }
+    }
+
+    /**
+     * binary search the child of an internal page to descend to
+     *
+     * @param buffer   internal page
+     * @param key      search key
+     * @param leftmost see descend
+     * @return index of the child after the last separator less than (leftmost) or less than or equal to the key
+     */
+    private static int childIndex(ByteBuffer buffer, long key, boolean leftmost) {
+        int low = 0, high = buffer.getInt(COUNT_OFFSET) - 1;
+        while (low <= high) {
+            int mid = low + (high - low) / 2;
+            long separator = internalKey(buffer, mid);
+            if (separator < key || (!leftmost && separator == key)) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // child[low] holds the keys in [key[low - 1], key[low]]
+        return low;
+    }
+
+    /**
+     * Range scan, one descent to the leaf page of fromKey then walking the next links of the leaf pages
+     *
+     * @param fromKey first key included
+     * @param toKey   last key included
+     * @return cursor over the entries between fromKey and toKey, in key order
+     * @throws IOException when reading fails
+     */
+    public Cursor range(long fromKey, long toKey) throws IOException {
+        return new Cursor(fromKey, toKey);
+    }
+
+    /**
+     * get all the values of a key, used by secondary indexes where the key is not unique
+     *
+     * @param key search key
+     * @return cursor over the entries of the key, in record id order
+     * @throws IOException when reading fails
+     */
+    public Cursor findAll(long key) throws IOException {
+        return new Cursor(key, key);
+    }
+
+    /**
+     * Lazy cursor over the leaf pages of a range scan, each cursor reads pages into its own page buffer
+     */
+    public class Cursor {
+        private final ByteBuffer leaf = ByteBuffer.allocate(pageSize);
+        private final long toKey;
+        /** index of the next entry in the current leaf page, -1 when the cursor is exhausted */
+        private int idx = -1;
+        private long key;
+        private long value;
+
+        private Cursor(long fromKey, long toKey) throws IOException {
+            this.toKey = toKey;
+            if (height == 0) {
+                return;
+            }
+            descend(fromKey, true, leaf);
+            // skip the keys less than fromKey in the start leaf page
+            int low = 0, high = leaf.getInt(COUNT_OFFSET) - 1;
+            while (low <= high) {
+                int mid = low + (high - low) / 2;
+                if (leafKey(leaf, mid) < fromKey) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            idx = low;
+        }
+
+        /**
+         * move to the next entry of the range
+         *
+         * @return false when there is no more entry in the range
+         * @throws IOException when reading fails
+         */
+        public boolean next() throws IOException {
+            if (idx < 0) {
+                return false;
+            }
+            // go to the next leaf page when the current one is finished
+            while (idx >= leaf.getInt(COUNT_OFFSET)) {
+                int nextPage = leaf.getInt(NEXT_OFFSET);
+                if (nextPage == -1) {
+                    idx = -1;
+                    return false;
+                }
+                readPage(nextPage, leaf);
+                idx = 0;
+            }
+            key = leafKey(leaf, idx);
+            if (key > toKey) {
+                idx = -1;
+                return false;
+            }
+            value = leafValue(leaf, idx++);
+            return true;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Remove one entry, e.g. when its record is withdrawn, the index file must be opened for writing.
+     * The descent to the leaf page keeps the path, and moves on to the next leaf pages while the key is duplicated.
+     * A node left less than half full borrows an entry from a sibling under the same parent, or is merged with it
+     * when the sibling has none to spare, which removes a separator from the parent, and the parent is fixed the
+     * same way. An internal root left with one child is dropped, the child becomes the root and the height shrinks.
+     * Every changed page and the header are written at once. The pages freed by merges are not reused,
+     * they are left out when the index file is built again.
+     *
+     * @param key   key of the entry
+     * @param value record id of the entry, needed as the key may be duplicated
+     * @return true if the entry was found and removed
+     * @throws IOException when reading or writing fails, or the index file is read-only
+     */
+    public boolean remove(long key, long value) throws IOException {
+        if (!writable) {
+            throw new IOException("the index file is opened read-only");
+        }
+        if (height == 0) {
+            return false;
+        }
+        // page of each level from the root down, and the child followed in each internal page
+        int[] pages = new int[height];
+        int[] children = new int[height];
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        pages[0] = rootPage;
+        for (int level = 0; level < height - 1; level++) {
+            readPage(pages[level], buffer);
+            children[level] = childIndex(buffer, key, true);
+            pages[level + 1] = internalChild(buffer, children[level]);
+        }
+        Node leaf;
+        int idx;
+        while (true) {
+            readPage(pages[height - 1], buffer);
+            leaf = new Node(buffer);
+            // binary search the first entry not less than (key, value), entries of a key are in record id order
+            int low = 0, high = leaf.count - 1;
+            while (low <= high) {
+                int mid = low + (high - low) / 2;
+                if (leaf.keys[mid] < key || (leaf.keys[mid] == key && leaf.values[mid] < value)) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            idx = low;
+            if (idx < leaf.count || !nextLeaf(pages, children, buffer)) {
+                break;
+            }
+        }
+        if (idx == leaf.count || leaf.keys[idx] != key || leaf.values[idx] != value) {
+            return false;
+        }
+        leaf.remove(idx, idx);
+        --entryCount;
+        rebalance(pages, children, leaf);
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * move a root to leaf path to the next leaf page
+     *
+     * @param pages    page of each level, see remove
+     * @param children child followed in each internal page
+     * @param buffer   page buffer
+     * @return false if the path is on the last leaf page
+     */
+    private boolean nextLeaf(int[] pages, int[] children, ByteBuffer buffer) throws IOException {
+        // the deepest internal page with a child right of the path
+        int level = height - 2;
+        for (; level >= 0; level--) {
+            readPage(pages[level], buffer);
+            if (children[level] < buffer.getInt(COUNT_OFFSET)) {
+                break;
+            }
+        }
+        if (level < 0) {
+            return false;
+        }
+        children[level]++;
+        pages[level + 1] = internalChild(buffer, children[level]);
+        // then the leftmost children down to the leaf level
+        for (level++; level < height - 1; level++) {
+            readPage(pages[level], buffer);
+            children[level] = 0;
+            pages[level + 1] = internalChild(buffer, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Fix the nodes on the path bottom-up after an entry was removed from the leaf page, and write them
+     *
+     * @param pages    page of each level, see remove
+     * @param children child followed in each internal page
+     * @param node     the leaf page, without the removed entry
+     */
+    private void rebalance(int[] pages, int[] children, Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        for (int level = height - 1; level > 0; level--) {
+            if (node.count >= minCount(node)) {
+                writeNode(pages[level], node, buffer);
+                return;
+            }
+            readPage(pages[level - 1], buffer);
+            Node parent = new Node(buffer);
+            int idx = children[level - 1];
+            int leftPage = idx > 0 ? parent.children[idx - 1] : -1;
+            int rightPage = idx < parent.count ? parent.children[idx + 1] : -1;
+            Node left = null, right = null;
+            if (leftPage != -1) {
+                readPage(leftPage, buffer);
+                left = new Node(buffer);
+            }
+            if (left != null && left.count > minCount(left)) {
+                borrowFromLeft(node, left, parent, idx - 1);
+                writeNode(leftPage, left, buffer);
+                writeNode(pages[level], node, buffer);
+                writeNode(pages[level - 1], parent, buffer);
+                return;
+            }
+            if (rightPage != -1) {
+                readPage(rightPage, buffer);
+                right = new Node(buffer);
+            }
+            if (right != null && right.count > minCount(right)) {
+                borrowFromRight(node, right, parent, idx);
+                writeNode(rightPage, right, buffer);
+                writeNode(pages[level], node, buffer);
+                writeNode(pages[level - 1], parent, buffer);
+                return;
+            }
+            // no sibling can spare an entry, the two nodes fit in one page
+            if (left != null) {
+                merge(left, node, parent, idx - 1);
+                writeNode(leftPage, left, buffer);
+            } else {
+                merge(node, right, parent, idx);
+                writeNode(pages[level], node, buffer);
+            }
+            node = parent;
+        }
+        if (node.leaf && node.count == 0) {
+            rootPage = -1;
+            height = 0;
+        } else if (!node.leaf && node.count == 0) {
+            rootPage = node.children[0];
+            --height;
+        } else {
+            writeNode(rootPage, node, buffer);
+        }
+    }
+
+    /**
+     * @return minimum number of entries of a leaf page or keys of an internal page other than the root,
+     * as after a split: half of the entries, or half of the children
+     */
+    private int minCount(Node node) {
+        if (node.leaf) {
+            return ((pageSize - NODE_HEADER_SIZE) / LEAF_ENTRY_SIZE + 1) / 2;
+        }
+        return ((pageSize - NODE_HEADER_SIZE - Record.INT_SIZE) / INTERNAL_ENTRY_SIZE + 2) / 2 - 1;
+    }
+
+    /**
+     * move the last entry of the left sibling to the node, the separator between them is updated
+     */
+    private static void borrowFromLeft(Node node, Node left, Node parent, int separator) {
+        node.insert(0);
+        if (node.leaf) {
+            node.keys[0] = left.keys[left.count - 1];
+            node.values[0] = left.values[left.count - 1];
+            parent.keys[separator] = node.keys[0];
+        } else {
+            // rotate the separator down to the node and the last key of the sibling up to the parent
+            node.keys[0] = parent.keys[separator];
+            node.children[0] = left.children[left.count];
+            parent.keys[separator] = left.keys[left.count - 1];
+        }
+        left.count--;
+    }
+
+    /**
+     * move the first entry of the right sibling to the node, the separator between them is updated
+     */
+    private static void borrowFromRight(Node node, Node right, Node parent, int separator) {
+        if (node.leaf) {
+            node.keys[node.count] = right.keys[0];
+            node.values[node.count] = right.values[0];
+            right.remove(0, 0);
+            parent.keys[separator] = right.keys[0];
+        } else {
+            node.keys[node.count] = parent.keys[separator];
+            node.children[node.count + 1] = right.children[0];
+            parent.keys[separator] = right.keys[0];
+            right.remove(0, 0);
+        }
+        node.count++;
+    }
+
+    /**
+     * append the right node to the left node, the separator and the right child are removed from the parent
+     */
+    private static void merge(Node left, Node right, Node parent, int separator) {
+        if (left.leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            System.arraycopy(right.values, 0, left.values, left.count, right.count);
+            left.next = right.next;
+            left.count += right.count;
+        } else {
+            // the separator comes down between the keys of the two nodes
+            left.keys[left.count] = parent.keys[separator];
+            System.arraycopy(right.keys, 0, left.keys, left.count + 1, right.count);
+            System.arraycopy(right.children, 0, left.children, left.count + 1, right.count + 1);
+            left.count += right.count + 1;
+        }
+        parent.remove(separator, separator + 1);
+    }
+
+    /**
+     * encode the node into the page buffer and write it, through the buffer pool when there is one
+     */
+    private void writeNode(int pageNo, Node node, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        Arrays.fill(buffer.array(), (byte) 0);
+        node.write(buffer);
+        if (pool != null) {
+            pool.write(fileId, pageNo, buffer);
+        } else {
+            writePage(channel, buffer, pageNo);
+        }
+    }
+
+    /**
+     * write the root page, height, entry count and first leaf page into the file header
+     */
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Record.INT_SIZE * 3 + LONG_SIZE);
+        header.putInt(rootPage).putInt(height).putLong(entryCount).putInt(height == 0 ? -1 : 1);
+        header.flip();
+        long pos = 12;
+        while (header.hasRemaining()) {
+            pos += channel.write(header, pos);
+        }
+    }
+
+    /**
+     * Node page decoded for remove, entries are shifted in arrays and the node is encoded again
+     */
+    private static class Node {
+        final boolean leaf;
+        /** number of entries of a leaf page, or keys of an internal page */
+        int count;
+        int next;
+        final long[] keys;
+        /** record ids of a leaf page */
+        final long[] values;
+        /** count + 1 children of an internal page */
+        final int[] children;
+
+        /**
+         * decode a node page, the arrays have room for the entries of a full page
+         *
+         * @param buffer node page
+         */
+        Node(ByteBuffer buffer) {
+            leaf = buffer.get(TYPE_OFFSET) == LEAF;
+            count = buffer.getInt(COUNT_OFFSET);
+            next = buffer.getInt(NEXT_OFFSET);
+            int pageSize = buffer.capacity();
+            if (leaf) {
+                int capacity = (pageSize - NODE_HEADER_SIZE) / LEAF_ENTRY_SIZE;
+                keys = new long[capacity];
+                values = new long[capacity];
+                children = null;
+                for (int i = 0; i < count; i++) {
+                    keys[i] = leafKey(buffer, i);
+                    values[i] = leafValue(buffer, i);
+                }
+            } else {
+                int capacity = (pageSize - NODE_HEADER_SIZE - Record.INT_SIZE) / INTERNAL_ENTRY_SIZE;
+                keys = new long[capacity];
+                values = null;
+                children = new int[capacity + 1];
+                for (int i = 0; i < count; i++) {
+                    keys[i] = internalKey(buffer, i);
+                }
+                for (int i = 0; i <= count; i++) {
+                    children[i] = internalChild(buffer, i);
+                }
+            }
+        }
+
+        /**
+         * shift the entries from i, or the keys from i and the children from i, one place to the right
+         */
+        void insert(int i) {
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            if (leaf) {
+                System.arraycopy(values, i, values, i + 1, count - i);
+            } else {
+                System.arraycopy(children, i, children, i + 1, count + 1 - i);
+            }
+            count++;
+        }
+
+        /**
+         * remove the entry i of a leaf page, or the key i and the child c of an internal page
+         */
+        void remove(int i, int c) {
+            System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+            if (leaf) {
+                System.arraycopy(values, i + 1, values, i, count - i - 1);
+            } else {
+                System.arraycopy(children, c + 1, children, c, count - c);
+            }
+            count--;
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.put(TYPE_OFFSET, leaf ? LEAF : INTERNAL);
+            buffer.putInt(COUNT_OFFSET, count);
+            buffer.putInt(NEXT_OFFSET, next);
+            if (leaf) {
+                for (int i = 0; i < count; i++) {
+                    buffer.putLong(NODE_HEADER_SIZE + i * LEAF_ENTRY_SIZE, keys[i]);
+                    buffer.putLong(NODE_HEADER_SIZE + i * LEAF_ENTRY_SIZE + LONG_SIZE, values[i]);
+                }
+            } else {
+                buffer.putInt(NODE_HEADER_SIZE, children[0]);
+                for (int i = 0; i < count; i++) {
+                    int offset = NODE_HEADER_SIZE + Record.INT_SIZE + i * INTERNAL_ENTRY_SIZE;
+                    buffer.putLong(offset, keys[i]);
+                    buffer.putInt(offset + LONG_SIZE, children[i + 1]);
+                }
+            }
+        }
+    }
+
+    private static long internalKey(ByteBuffer buffer, int i) {
+        return buffer.getLong(NODE_HEADER_SIZE + Record.INT_SIZE + i * INTERNAL_ENTRY_SIZE);
+    }
+
+    private static int internalChild(ByteBuffer buffer, int i) {
+        // child[0] is right after the header, child[i + 1] follows key[i]
+        return buffer.getInt(NODE_HEADER_SIZE + i * INTERNAL_ENTRY_SIZE);
+    }
+
+    private static long leafKey(ByteBuffer buffer, int i) {
+        return buffer.getLong(NODE_HEADER_SIZE + i * LEAF_ENTRY_SIZE);
+    }
+
+    private static long leafValue(ByteBuffer buffer, int i) {
+        return buffer.getLong(NODE_HEADER_SIZE + i * LEAF_ENTRY_SIZE + LONG_SIZE);
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getPageReads() {
+        return pageReads;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Build the index file of the index key for the given heap file, pages filled up, see build
+     *
+     * @param heapFile heap file path
+     * @param indexKey key of the index
+     * @throws IOException when reading or writing fails
+     */
+    static void build(String heapFile, IndexKey indexKey) throws IOException {
+        build(heapFile, indexKey, DEFAULT_FILL_FACTOR, ExternalSorter.DEFAULT_RUN_SIZE);
+    }
+
+    /**
+     * Build the index file of the index key for the given heap file
+     * the heap file is scanned once, the value of each key is its record id, see DbUtil.toRid.
+     * Only the columns of the key are read from a PAX heap file.
+     * The entries go through an external sort, which keeps them in memory and does not sort them when they are
+     * in key order already, e.g. IDs in load order, and spills sorted runs to temporary files when they are not
+     * and do not fit in one run. The index file uses the page size of the heap file.
+     *
+     * @param heapFile   heap file path
+     * @param indexKey   key of the index
+     * @param fillFactor fraction of each page filled with entries, in (0, 1], a node keeps at least half a page
+     * @param runSize    number of entries sorted in memory per run
+     * @throws IOException when reading or writing fails
+     */
+    static void build(String heapFile, IndexKey indexKey, double fillFactor, int runSize) throws IOException {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            System.out.print("The fill factor must be in (0, 1]");
+            System.exit(1);
+        }
+        int pageSize;
+        try (ExternalSorter sorter = new ExternalSorter(runSize)) {
+            try (FileChannel heap = FileChannel.open(Paths.get(heapFile), StandardOpenOption.READ)) {
+                PageLayout layout = HeapFile.readHeader(heap).pageLayout();
+                pageSize = layout.getPageSize();
+                ByteBuffer page = ByteBuffer.allocate(pageSize);
+                RecordView record = new RecordView(layout);
+                long pageCount = heap.size() / pageSize;
+                // each iteration, read the columns of the key of 1 page into the buffer
+                for (int pageNo = HeapFile.FIRST_PAGE; pageNo < pageCount; pageNo++) {
+                    layout.read(heap, pageNo, page, indexKey.columns());
+                    layout.check(page, pageNo, indexKey.columns());
+                    extractKeys(indexKey, record, page, pageNo, HeapFile.recordCount(page), sorter);
+                }
+            }
+            write(sorter.sorted(), sorter.size(), pageSize, fillFactor, indexKey.path(heapFile));
+        }
+    }
+
+    /**
+     * compute the keys of the records of one heap page, kept out of the page loop of build
+     * so the JIT compiles this small loop on its own instead of the whole build method
+     *
+     * @param indexKey key of the index
+     * @param record   record view of the heap file
+     * @param page     heap page
+     * @param pageNo   page number
+     * @param count    number of records in the page
+     * @param sorter   sorter receiving the (key, record id) entries
+     * @throws IOException when spilling a run fails
+     */
+    private static void extractKeys(IndexKey indexKey, RecordView record, ByteBuffer page, int pageNo, int count,
+                                    ExternalSorter sorter) throws IOException {
+        for (int slot = 0; slot < count; slot++) {
+            sorter.add(indexKey.extract(record.wrap(page, slot)), DbUtil.toRid(pageNo, slot));
+        }
+    }
+
+    /**
+     * @param capacity   maximum number of entries or children of a node
+     * @param fillFactor fraction of the capacity to fill
+     * @return number of entries or children per node, at least half of the capacity as after a split
+     */
+    private static int nodeSize(int capacity, double fillFactor) {
+        return Math.max((capacity + 1) / 2, Math.min(capacity, (int) Math.round(capacity * fillFactor)));
+    }
+
+    /**
+     * Write sorted entries bottom-up: the leaf pages first, then each internal level until one root page.
+     * Each level has as few nodes as the fill factor allows, and the entries or children are spread evenly
+     * over its nodes, so the last node of a level is not left almost empty.
+     *
+     * @param entries    entries in key order
+     * @param n          number of entries
+     * @param pageSize   page size
+     * @param fillFactor fraction of each page filled
+     * @param indexFile  output index file path
+     * @throws IOException when reading the entries or writing fails
+     */
+    private static void write(ExternalSorter.Cursor entries, long n, int pageSize, double fillFactor, String indexFile)
+            throws IOException {
+        int leafCapacity = (pageSize - NODE_HEADER_SIZE) / LEAF_ENTRY_SIZE;
+        int internalCapacity = (pageSize - NODE_HEADER_SIZE - Record.INT_SIZE) / INTERNAL_ENTRY_SIZE;
+        int perLeaf = nodeSize(leafCapacity, fillFactor);
+        int fanout = nodeSize(internalCapacity + 1, fillFactor);
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        try (FileChannel out = FileChannel.open(Paths.get(indexFile), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int pageNo = 1;
+            int levelCount = (int) ((n + perLeaf - 1) / perLeaf);
+            // first key and page number of every node on the level below
+            long[] levelKeys = new long[levelCount];
+            int[] levelPages = new int[levelCount];
+            for (int leaf = 0; leaf < levelCount; leaf++) {
+                int count = (int) (n * (leaf + 1) / levelCount - n * leaf / levelCount);
+                buffer.clear();
+                buffer.put(TYPE_OFFSET, LEAF);
+                buffer.putInt(COUNT_OFFSET, count);
+                buffer.putInt(NEXT_OFFSET, leaf == levelCount - 1 ? -1 : pageNo + 1);
+                for (int i = 0; i < count; i++) {
+                    if (!entries.next()) {
+                        throw new IOException("index entries ended after " + (n * leaf / levelCount + i) + " of " + n);
+                    }
+                    int offset = NODE_HEADER_SIZE + i * LEAF_ENTRY_SIZE;
+                    buffer.putLong(offset, entries.getKey());
+                    buffer.putLong(offset + LONG_SIZE, entries.getValue());
+                }
+                levelKeys[leaf] = buffer.getLong(NODE_HEADER_SIZE);
+                levelPages[leaf] = pageNo;
+                writePage(out, buffer, pageNo++);
+            }
+            int height = levelCount == 0 ? 0 : 1;
+            // build internal levels until only the root is left
+            while (levelCount > 1) {
+                int parents = (levelCount + fanout - 1) / fanout;
+                long[] parentKeys = new long[parents];
+                int[] parentPages = new int[parents];
+                for (int p = 0; p < parents; p++) {
+                    int from = (int) ((long) levelCount * p / parents), to = (int) ((long) levelCount * (p + 1) / parents);
+                    buffer.clear();
+                    buffer.put(TYPE_OFFSET, INTERNAL);
+                    buffer.putInt(COUNT_OFFSET, to - from - 1);
+                    buffer.putInt(NEXT_OFFSET, -1);
+                    buffer.putInt(NODE_HEADER_SIZE, levelPages[from]);
+                    for (int i = from + 1; i < to; i++) {
+                        int offset = NODE_HEADER_SIZE + Record.INT_SIZE + (i - from - 1) * INTERNAL_ENTRY_SIZE;
+                        buffer.putLong(offset, levelKeys[i]);
+                        buffer.putInt(offset + LONG_SIZE, levelPages[i]);
+                    }
+                    parentKeys[p] = levelKeys[from];
+                    parentPages[p] = pageNo;
+                    writePage(out, buffer, pageNo++);
+                }
+                levelCount = parents;
+                levelKeys = parentKeys;
+                levelPages = parentPages;
+                ++height;
+            }
+            // write the file header into page 0
+            buffer.clear();
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, pageSize);
+            buffer.putInt(12, levelCount == 0 ? -1 : levelPages[0]);
+            buffer.putInt(16, height);
+            buffer.putLong(20, n);
+            buffer.putInt(28, n == 0 ? -1 : 1);
+            writePage(out, buffer, 0);
+        }
+    }
+
+    /**
+     * write the whole page buffer at the position of the page number, then clear the buffer for the next page
+     */
+    private static void writePage(FileChannel out, ByteBuffer buffer, int pageNo) throws IOException {
+        buffer.clear();
+        long pos = (long) pageNo * buffer.capacity();
+        while (buffer.hasRemaining()) {
+            pos += out.write(buffer, pos);
+        }
+        buffer.clear();
+        // reset the page content, by default value for byte in array is 0
+        Arrays.fill(buffer.array(), (byte) 0);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Keys of the B+ tree index files of a heap file
+ * every index key computes a long key from one encoded record and has its own index file
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public enum IndexKey {
+    /**
+     * unique ID, e.g. heap.40960.idx
+     */
+    ID(".idx", Column.ID) {
+        @Override
+        long extract(RecordView record) {
+            return record.getId();
+        }
+    },
+    /**
+     * SENSOR_ID, duplicated for every count of the sensor, e.g. heap.40960.sensor.idx
+     */
+    SENSOR_ID(".sensor.idx", Column.SENSOR_ID) {
+        @Override
+        long extract(RecordView record) {
+            return record.getSensorId();
+        }
+    },
+    /**
+     * (YEAR, MONTH, M_DATE, TIME) as yyyyMMddHH, duplicated for every sensor, e.g. heap.40960.date.idx
+     */
+    DATE(".date.idx", Column.YEAR, Column.MONTH, Column.M_DATE, Column.TIME) {
+        @Override
+        long extract(RecordView record) {
+            return dateKey(record.getYear(), record.getMonthNumber(), record.getMDate(), record.getTime());
+        }
+    },
+    /**
+     * SDT_NAME = SENSOR_ID + DATE_TIME, kept as (SENSOR_ID, yyyyMMddHH) so the key of one sensor on
+     * one date is a contiguous range, e.g. heap.40960.sdt.idx
+     */
+    SDT_NAME(".sdt.idx", Column.SENSOR_ID, Column.YEAR, Column.MONTH, Column.M_DATE, Column.TIME) {
+        @Override
+        long extract(RecordView record) {
+            return sdtKey(record.getSensorId(), DATE.extract(record));
+        }
+    };
+
+    /** last year whose date key yyyyMMddHH fits in the low 32 bits of a SDT_NAME key, 4294123123 < 2^32 */
+    static final int MAX_YEAR = 4294;
+
+    /** file name suffix of the index file */
+    private final String suffix;
+    /** columns read to compute the key, a PAX heap file is scanned on these columns only */
+    private final Column[] columns;
+
+    IndexKey(String suffix, Column... columns) {
+        this.suffix = suffix;
+        this.columns = columns;
+    }
+
+    /**
+     * compute the key of one record
+     *
+     * @param record view of the record in its page
+     * @return key of the record
+     */
+    abstract long extract(RecordView record);
+
+    /**
+     * @return columns read by extract
+     */
+    Column[] columns() {
+        return columns;
+    }
+
+    /**
+     * get the index file name for the given heap file, e.g. heap.40960 -> heap.40960.idx
+     *
+     * @param heapFile heap file path
+     * @return index file path
+     */
+    String path(String heapFile) {
+        return heapFile + suffix;
+    }
+
+    /**
+     * @return date key yyyyMMddHH, e.g. 2010092400 for 09/24/2010 12:00:00 AM
+     */
+    static long dateKey(int year, int month, int mDate, int time) {
+        return ((year * 100L + month) * 100 + mDate) * 100 + time;
+    }
+
+    /**
+     * @return SDT_NAME key, sensor id in the high 32 bits and date key in the low 32 bits
+     * @throws IllegalArgumentException if the date key does not fit in the low 32 bits
+     */
+    static long sdtKey(int sensorId, long dateKey) {
+        if (dateKey >>> 32 != 0) {
+            throw new IllegalArgumentException("date key out of range: " + dateKey);
+        }
+        return ((long) sensorId << 32) | dateKey;
+    }
+
+    /**
+     * Parse a date time text of the DATE_TIME attribute, e.g. "09/24/2010 12:00:00 AM", the time part is optional
+     * the hour is 1 - 12 with AM or PM and 0 - 23 without
+     *
+     * @param text date time text
+     * @return date key yyyyMMddHH, hour 0 if the time part is missing, -1 if the text is not a valid date time
+     * or its year is after MAX_YEAR
+     */
+    static long parseDateKey(String text) {
+        String[] parts = text.trim().split("\\s+");
+        String[] date = parts[0].split("/");
+        if (date.length != 3 || DbUtil.notNumber(date[0]) || DbUtil.notNumber(date[1]) || DbUtil.notNumber(date[2])) {
+            return -1;
+        }
+        int hour = 0;
+        if (parts.length >= 2) {
+            String hh = parts[1].split(":")[0];
+            if (DbUtil.notNumber(hh)) {
+                return -1;
+            }
+            hour = DbUtil.toInt(hh);
+            if (parts.length >= 3) {
+                boolean pm = "PM".equalsIgnoreCase(parts[2]);
+                if (hour < 1 || hour > 12 || !pm && !"AM".equalsIgnoreCase(parts[2])) {
+                    return -1;
+                }
+                // 12 AM is hour 0, 12 PM is hour 12
+                hour = hour % 12 + (pm ? 12 : 0);
+            }
+        }
+        int month = DbUtil.toInt(date[0]);
+        int mDate = DbUtil.toInt(date[1]);
+        int year = DbUtil.toInt(date[2]);
+        if (month < 1 || month > 12 || mDate < 1 || mDate > 31 || hour > 23 || year > MAX_YEAR) {
+            return -1;
+        }
+        return dateKey(year, month, mDate, hour);
+    }
+
+    /**
+     * Parse a SDT_NAME text, e.g. "109/24/2010 12:00:00 AM" is sensor 1 at 09/24/2010 12:00:00 AM
+     * the DATE_TIME part is always Record.DATE_TIME_SIZE characters
+     *
+     * @param text SDT_NAME text
+     * @return SDT_NAME key, -1 if the text is not a SDT_NAME
+     */
+    static long parseSdtKey(String text) {
+        text = text.trim();
+        int split = text.length() - Record.DATE_TIME_SIZE;
+        if (split <= 0 || DbUtil.notNumber(text.substring(0, split))) {
+            return -1;
+        }
+        long dateKey = parseDateKey(text.substring(split));
+        return dateKey == -1 ? -1 : sdtKey(DbUtil.toInt(text.substring(0, split)), dateKey);
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory-mapped view of a heap file
+ * A single MappedByteBuffer can not exceed 2GB, so the file is mapped in chunks of whole pages,
+ * a page never crosses two chunks. Records are decoded straight out of the mapping with absolute
+ * gets at Record.*_OFFSET positions, no page or record is copied into a byte array.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class MappedHeapFile implements AutoCloseable {
+
+    /** upper bound of one mapped chunk */
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final PageLayout layout;
+    private final int pageSize;
+    private final int pagesPerChunk;
+    private final int pageCount;
+
+    /**
+     * Map the whole heap file
+     *
+     * @param path   heap file path
+     * @param layout page layout of the heap file, from its header
+     * @throws IOException when the file can not be mapped
+     */
+    public MappedHeapFile(String path, PageLayout layout) throws IOException {
+        this.layout = layout;
+        this.pageSize = layout.getPageSize();
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        // a partial page at the end of the file is ignored, same as reading page by page
+        pageCount = (int) (channel.size() / pageSize);
+        pagesPerChunk = (int) (MAX_CHUNK_SIZE / pageSize);
+        int chunkCount = (pageCount + pagesPerChunk - 1) / pagesPerChunk;
+        chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long start = (long) i * pagesPerChunk * pageSize;
+            long size = (long) Math.min(pagesPerChunk, pageCount - i * pagesPerChunk) * pageSize;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+    }
+
+    /**
+     * get one page of the mapping, the returned buffer shares the mapped memory
+     *
+     * @param pageNo page number
+     * @return buffer of exactly 1 page-size, position 0 is the first byte of the page
+     */
+    public ByteBuffer page(int pageNo) {
+        ByteBuffer chunk = chunks[pageNo / pagesPerChunk].duplicate();
+        int offset = (pageNo % pagesPerChunk) * pageSize;
+        chunk.position(offset).limit(offset + pageSize);
+        return chunk.slice();
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public PageLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping stays valid until the buffers are garbage collected
+        channel.close();
+    }
+}
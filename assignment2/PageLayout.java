@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Placement of the records inside the data pages of one heap file
+ * ROW layout: each record is stored whole in its slot, slot i starts at PAGE_HEADER_SIZE + i * record size.
+ * PAX layout: the page is split into one minipage per column, each minipage holds the values of its column
+ * for every slot of the page, so a scan on SENSOR_ID and HOURLY_COUNTS only reads those two minipages.
+ * The PAX page header is followed by one CRC32 per minipage, the projected minipages are verified
+ * without reading the others.
+ * Both layouts hold the same record in the same slot, a value is at columnStart + slot * stride,
+ * the stride is the record size in the row layout and the column size in the PAX layout.
+ * Column sizes are the sizes of the Record attributes, or the code sizes in a dictionary-encoded heap file.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class PageLayout {
+
+    /** HeapFile.ROW_LAYOUT or HeapFile.PAX_LAYOUT */
+    private final int layout;
+    private final int pageSize;
+    /** dictionaries of a dictionary-encoded heap file, null when the values are stored as they are */
+    private final Dictionary dictionary;
+    /** number of bytes of each column and of one record */
+    private final int[] sizes = new int[Column.ALL.length];
+    private final int recordSize;
+    /** page header size, the column checksums included */
+    private final int headerSize;
+    /** number of records fitting in one data page */
+    private final int capacity;
+    /** starting point of each column of slot 0 */
+    private final int[] columnStarts = new int[Column.ALL.length];
+    /** distance between the values of one column in two consecutive slots */
+    private final int[] strides = new int[Column.ALL.length];
+
+    /**
+     * @param layout   HeapFile.ROW_LAYOUT or HeapFile.PAX_LAYOUT
+     * @param pageSize page size of the heap file
+     */
+    public PageLayout(int layout, int pageSize) {
+        this(layout, pageSize, null);
+    }
+
+    /**
+     * @param layout     HeapFile.ROW_LAYOUT or HeapFile.PAX_LAYOUT
+     * @param pageSize   page size of the heap file
+     * @param dictionary dictionaries of a dictionary-encoded heap file, null when the values are stored as they are
+     */
+    public PageLayout(int layout, int pageSize, Dictionary dictionary) {
+        this.layout = layout;
+        this.pageSize = pageSize;
+        this.dictionary = dictionary;
+        int size = 0;
+        for (Column column : Column.ALL) {
+            sizes[column.ordinal()] = dictionary != null ? column.codeSize : column.size;
+            size += sizes[column.ordinal()];
+        }
+        recordSize = size;
+        boolean pax = layout == HeapFile.PAX_LAYOUT;
+        headerSize = HeapFile.PAGE_HEADER_SIZE + (pax ? Integer.BYTES * Column.ALL.length : 0);
+        capacity = Math.max((pageSize - headerSize) / recordSize, 0);
+        // offset of the column in a row, or in the minipages of a PAX page
+        int offset = 0;
+        for (Column column : Column.ALL) {
+            columnStarts[column.ordinal()] = headerSize + (pax ? capacity * offset : offset);
+            strides[column.ordinal()] = pax ? sizes[column.ordinal()] : recordSize;
+            offset += sizes[column.ordinal()];
+        }
+    }
+
+    /**
+     * @param slot   slot within a data page
+     * @param column column of the record
+     * @return position of the value in the page
+     */
+    public int position(int slot, Column column) {
+        return columnStarts[column.ordinal()] + slot * strides[column.ordinal()];
+    }
+
+    /**
+     * @param column column of the record
+     * @return distance between the values of the column in two consecutive slots
+     */
+    public int stride(Column column) {
+        return strides[column.ordinal()];
+    }
+
+    /**
+     * @param count number of records in the page
+     * @return free space offset of a page holding count records
+     */
+    private int freeOffset(int count) {
+        // a PAX page has free space at the end of every minipage, the used area is the whole page
+        return headerSize + (layout == HeapFile.PAX_LAYOUT ? capacity : count) * recordSize;
+    }
+
+    /**
+     * fill in the page header of a data page after its records are written
+     *
+     * @param page        data page, the unused slots must be 0
+     * @param recordCount number of records in the page
+     */
+    public void seal(ByteBuffer page, int recordCount) {
+        page.putInt(HeapFile.COUNT_OFFSET, recordCount);
+        page.putInt(HeapFile.FREE_OFFSET, freeOffset(recordCount));
+        if (layout == HeapFile.PAX_LAYOUT) {
+            for (Column column : Column.ALL) {
+                page.putInt(checksumOffset(column), columnChecksum(page, column, recordCount));
+            }
+        }
+        page.putInt(HeapFile.CHECKSUM_OFFSET, headerChecksum(page));
+    }
+
+    /**
+     * verify the page header and every record of a data page
+     *
+     * @param page   data page
+     * @param pageNo page number, used in the error message
+     * @throws IOException when the page is corrupted
+     */
+    public void check(ByteBuffer page, int pageNo) throws IOException {
+        check(page, pageNo, Column.ALL);
+    }
+
+    /**
+     * verify the page header and the given columns of a data page,
+     * the row layout can only verify whole records
+     *
+     * @param page    data page
+     * @param pageNo  page number, used in the error message
+     * @param columns columns read from the page
+     * @throws IOException when the page is corrupted
+     */
+    public void check(ByteBuffer page, int pageNo, Column... columns) throws IOException {
+        int count = HeapFile.recordCount(page);
+        boolean valid = count >= 0 && count <= capacity && page.getInt(HeapFile.FREE_OFFSET) == freeOffset(count)
+                && page.getInt(HeapFile.CHECKSUM_OFFSET) == headerChecksum(page);
+        if (valid && layout == HeapFile.PAX_LAYOUT) {
+            for (Column column : columns) {
+                valid &= page.getInt(checksumOffset(column)) == columnChecksum(page, column, count);
+            }
+        }
+        if (!valid) {
+            throw new IOException("heap page " + pageNo + " is corrupted");
+        }
+    }
+
+    /**
+     * read the page header and the given columns of a data page into the page buffer,
+     * the row layout reads the whole page. Bytes of the other columns are left as they are.
+     *
+     * @param channel heap file channel
+     * @param pageNo  page number
+     * @param page    page-size buffer, each column is read to its position in the page
+     * @param columns columns to read
+     * @return number of bytes read
+     * @throws IOException when reading fails
+     */
+    public int read(FileChannel channel, int pageNo, ByteBuffer page, Column... columns) throws IOException {
+        long pagePos = (long) pageNo * pageSize;
+        if (layout != HeapFile.PAX_LAYOUT) {
+            return readFully(channel, pagePos, page, 0, pageSize);
+        }
+        int bytes = readFully(channel, pagePos, page, 0, headerSize);
+        // a corrupted count is caught by check, only the bytes inside the page are read
+        int count = Math.min(Math.max(HeapFile.recordCount(page), 0), capacity);
+        for (Column column : columns) {
+            int start = columnStarts[column.ordinal()];
+            bytes += readFully(channel, pagePos + start, page, start, count * sizes[column.ordinal()]);
+        }
+        return bytes;
+    }
+
+    /**
+     * positioned read of len bytes into buffer[offset, offset + len), stops at the end of the file
+     */
+    private static int readFully(FileChannel channel, long filePos, ByteBuffer buffer, int offset, int len) throws IOException {
+        ByteBuffer target = buffer.duplicate();
+        target.limit(offset + len).position(offset);
+        while (target.hasRemaining()) {
+            if (channel.read(target, filePos + target.position() - offset) == -1) {
+                break;
+            }
+        }
+        return target.position() - offset;
+    }
+
+    private static int checksumOffset(Column column) {
+        return HeapFile.PAGE_HEADER_SIZE + Integer.BYTES * column.ordinal();
+    }
+
+    /**
+     * CRC32 of the page header before the checksum and, after it, the used slots (row layout)
+     * or the column checksums (PAX layout)
+     */
+    private int headerChecksum(ByteBuffer page) {
+        int end = layout == HeapFile.PAX_LAYOUT ? headerSize : page.getInt(HeapFile.FREE_OFFSET);
+        return checksum(page, 0, HeapFile.CHECKSUM_OFFSET, HeapFile.PAGE_HEADER_SIZE, end);
+    }
+
+    /**
+     * CRC32 of the used part of one minipage
+     */
+    private int columnChecksum(ByteBuffer page, Column column, int count) {
+        int start = columnStarts[column.ordinal()];
+        return checksum(page, start, start + count * sizes[column.ordinal()], 0, 0);
+    }
+
+    /**
+     * CRC32 of the bytes in [from1, to1) then [from2, to2), a range is clipped to the page
+     */
+    private static int checksum(ByteBuffer page, int from1, int to1, int from2, int to2) {
+        CRC32 crc = new CRC32();
+        ByteBuffer bytes = page.duplicate();
+        bytes.limit(Math.min(Math.max(to1, from1), page.capacity())).position(from1);
+        crc.update(bytes);
+        bytes.limit(Math.min(Math.max(to2, from2), page.capacity())).position(from2);
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return HeapFile.ROW_LAYOUT or HeapFile.PAX_LAYOUT
+     */
+    public int getLayout() {
+        return layout;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return number of records fitting in one data page
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of bytes of one record
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * @param column column of the record
+     * @return number of bytes of one value of the column
+     */
+    public int size(Column column) {
+        return sizes[column.ordinal()];
+    }
+
+    /**
+     * @return dictionaries of a dictionary-encoded heap file, null when the values are stored as they are
+     */
+    public Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public String toString() {
+        return (layout == HeapFile.PAX_LAYOUT ? "PAX" : "row") + (dictionary != null ? " dictionary-encoded" : "");
+    }
+}
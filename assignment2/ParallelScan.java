@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+/**
+ * Parallel full scan of a heap file, read through its memory mapping or with positioned reads of its channel
+ * The pages are split into ranges which are scanned by a fork/join pool, every range collects its matches
+ * sorted by ID, and the results are merged in ID order when the tasks are joined.
+ * The scan is projected on the columns of the predicate, in a PAX heap file only their minipages are read.
+ * Pages ruled out by the page filter, e.g. through the zone map, are not touched at all.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class ParallelScan {
+
+    /** a page range is scanned by one task when it has at most this number of pages */
+    static final int PAGES_PER_TASK = 64;
+
+    private final FileChannel channel;
+    private final MappedHeapFile heap;
+    private final PageLayout layout;
+    private final ForkJoinPool pool;
+    private final int pageCount;
+    private final int perPage;
+    /** bytes read from the heap file channel, 0 when reading the memory mapping */
+    private final LongAdder bytesRead = new LongAdder();
+    /** pages ruled out by the page filter */
+    private final LongAdder pagesSkipped = new LongAdder();
+
+    /**
+     * @param channel heap file channel, pages are read with positioned reads which are safe from many threads
+     * @param heap    memory-mapped heap file, null to read the pages from the channel
+     * @param layout  page layout of the heap file
+     * @param pool    fork/join pool running the scan
+     * @throws IOException when the size of the heap file can not be read
+     */
+    public ParallelScan(FileChannel channel, MappedHeapFile heap, PageLayout layout, ForkJoinPool pool) throws IOException {
+        this.channel = channel;
+        this.heap = heap;
+        this.layout = layout;
+        this.pool = pool;
+        this.pageCount = heap != null ? heap.getPageCount() : (int) (channel.size() / layout.getPageSize());
+        this.perPage = layout.getCapacity();
+    }
+
+    /**
+     * Scan the whole heap file
+     *
+     * @param predicate condition of the matched records
+     * @param pages     false for the page numbers which can not hold a matched record
+     * @param columns   columns read by the predicate, ID is always read to order the matches
+     * @return record ids of the matched records in ID order, see DbUtil.toRid
+     * @throws UncheckedIOException when reading fails or a page is corrupted
+     */
+    public long[] scan(RecordPredicate predicate, IntPredicate pages, Column... columns) {
+        Column[] projection = Arrays.copyOf(columns, columns.length + 1);
+        projection[columns.length] = Column.ID;
+        // each match is kept as (id << 32) | record number, so sorting by it gives ID order
+        long[] matches = pool.invoke(new ScanTask(predicate, pages, projection, HeapFile.FIRST_PAGE, pageCount));
+        for (int i = 0; i < matches.length; i++) {
+            int recordNo = (int) matches[i];
+            matches[i] = DbUtil.toRid(recordNo / perPage, recordNo % perPage);
+        }
+        return matches;
+    }
+
+    /**
+     * @return bytes read from the heap file channel by all scans so far
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return pages ruled out by the page filter in all scans so far
+     */
+    public long getPagesSkipped() {
+        return pagesSkipped.sum();
+    }
+
+    /**
+     * @return number of data pages of the heap file
+     */
+    public int getPageCount() {
+        return pageCount - HeapFile.FIRST_PAGE;
+    }
+
+    /**
+     * scan task of the pages in [from, to)
+     */
+    private class ScanTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final RecordPredicate predicate;
+        private final IntPredicate pages;
+        private final Column[] columns;
+        private final int from;
+        private final int to;
+
+        ScanTask(RecordPredicate predicate, IntPredicate pages, Column[] columns, int from, int to) {
+            this.predicate = predicate;
+            this.pages = pages;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= PAGES_PER_TASK) {
+                return scanRange();
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(predicate, pages, columns, from, mid);
+            left.fork();
+            long[] right = new ScanTask(predicate, pages, columns, mid, to).compute();
+            return merge(left.join(), right);
+        }
+
+        private long[] scanRange() {
+            long[] matches = new long[16];
+            int n = 0;
+            // one view per task, a view is moved from record to record
+            RecordView record = new RecordView(layout);
+            // one page buffer per task when reading the channel, reused for every page of the range
+            ByteBuffer buffer = heap == null ? ByteBuffer.allocate(layout.getPageSize()) : null;
+            int skipped = 0;
+            for (int pageNo = from; pageNo < to; pageNo++) {
+                if (!pages.test(pageNo)) {
+                    ++skipped;
+                    continue;
+                }
+                ByteBuffer page = buffer;
+                try {
+                    if (heap != null) {
+                        page = heap.page(pageNo);
+                    } else {
+                        bytesRead.add(layout.read(channel, pageNo, buffer, columns));
+                    }
+                    layout.check(page, pageNo, columns);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                // only the used slots are scanned, the free space at the end of the page is skipped
+                int count = HeapFile.recordCount(page);
+                for (int slot = 0; slot < count; slot++) {
+                    if (predicate.test(record.wrap(page, slot))) {
+                        if (n == matches.length) {
+                            matches = Arrays.copyOf(matches, n * 2);
+                        }
+                        int id = record.getId();
+                        matches[n++] = ((long) id << 32) | (pageNo * perPage + slot);
+                    }
+                }
+            }
+            pagesSkipped.add(skipped);
+            matches = Arrays.copyOf(matches, n);
+            // IDs are mostly in load order, the sort is cheap
+            Arrays.sort(matches);
+            return matches;
+        }
+    }
+
+    /**
+     * merge two sorted arrays into one sorted array
+     */
+    private static long[] merge(long[] a, long[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        long[] merged = new long[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            merged[k++] = a[i] <= b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length) {
+            merged[k++] = a[i++];
+        }
+        while (j < b.length) {
+            merged[k++] = b[j++];
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Predicate over one encoded record in a heap page
+ * Attributes are tested straight out of the page buffer through a record view, no record object is created
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+@FunctionalInterface
+public interface RecordPredicate {
+
+    /**
+     * @param record view of the record in its page
+     * @return true if the record matches
+     */
+    boolean test(RecordView record);
+
+    /**
+     * @param other another predicate
+     * @return predicate matching the records matched by both predicates
+     */
+    default RecordPredicate and(RecordPredicate other) {
+        return record -> test(record) && other.test(record);
+    }
+
+    /**
+     * @param column int column of the record, e.g. Column.SENSOR_ID
+     * @param value  expected value
+     * @return predicate matching the records whose attribute equals the value
+     */
+    static RecordPredicate intEquals(Column column, int value) {
+        return record -> record.getInt(column) == value;
+    }
+
+    /**
+     * @param column int column of the record, e.g. Column.YEAR
+     * @param from   lower bound included
+     * @param to     upper bound included
+     * @return predicate matching the records whose attribute falls in [from, to]
+     */
+    static RecordPredicate intBetween(Column column, int from, int to) {
+        return record -> {
+            int value = record.getInt(column);
+            return value >= from && value <= to;
+        };
+    }
+}
@@ -0,0 +1,153 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable read-only view of one record inside a page buffer
+ * The view is moved from record to record with wrap, nothing is copied out of the page.
+ * Values are found through the page layout of the heap file, so the same view reads row and PAX pages.
+ * In a dictionary-encoded heap file the String getters decode the codes, see Dictionary.
+ * Int attributes are read in place, String attributes are decoded only when their getter is called,
+ * so a scan that checks ID or SENSOR_ID never creates a String for DATE_TIME or SENSOR_NAME.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class RecordView {
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private final PageLayout layout;
+    /** null when the values are stored as they are */
+    private final Dictionary dictionary;
+    /** month number of each MONTH code of a dictionary-encoded heap file */
+    private final int[] monthNumbers;
+    private ByteBuffer page;
+    private int slot;
+
+    /**
+     * @param layout page layout of the heap file
+     */
+    public RecordView(PageLayout layout) {
+        this.layout = layout;
+        dictionary = layout.getDictionary();
+        monthNumbers = new int[dictionary != null ? 1 << (8 * Column.MONTH.codeSize) : 0];
+        for (int code = 0; code < monthNumbers.length; code++) {
+            // pad to the 3 letters read by monthNumber
+            monthNumbers[code] = DbUtil.monthNumber(ByteBuffer.wrap(Arrays.copyOf(dictionary.bytes(Column.MONTH, code), 3)), 0);
+        }
+    }
+
+    /**
+     * point the view at a record
+     *
+     * @param page page buffer holding the record, heap, pooled or memory-mapped
+     * @param slot slot of the record in the page
+     * @return this view
+     */
+    public RecordView wrap(ByteBuffer page, int slot) {
+        this.page = page;
+        this.slot = slot;
+        return this;
+    }
+
+    /**
+     * @param column column of the record
+     * @return position of the value in the page
+     */
+    public int position(Column column) {
+        return layout.position(slot, column);
+    }
+
+    /**
+     * @param column int column of the record
+     * @return value of the column
+     */
+    public int getInt(Column column) {
+        return page.getInt(layout.position(slot, column));
+    }
+
+    /**
+     * @param column String column of the record
+     * @return value of the column, padding removed
+     */
+    public String getString(Column column) {
+        if (dictionary == null) {
+            return DbUtil.bytesToStr(page, layout.position(slot, column), column.size, CHARSET);
+        }
+        switch (column.codeType) {
+            case 'T':
+                return DbUtil.formatDateTime(getInt(column));
+            case 'D':
+                return dictionary.value(column, code(column));
+            case 'V':
+                // SDT_NAME is SENSOR_ID + DATE_TIME, cut to its size
+                String sdtName = getSensorId() + getDateTime();
+                return sdtName.length() > column.size ? sdtName.substring(0, column.size) : sdtName;
+            default:
+                throw new IllegalArgumentException(column + " is not a String column");
+        }
+    }
+
+    /**
+     * @param column dictionary-encoded column
+     * @return code of the value in the dictionary
+     */
+    private int code(Column column) {
+        int position = layout.position(slot, column);
+        return column.codeSize == 1 ? page.get(position) & 0xFF : page.getShort(position) & 0xFFFF;
+    }
+
+    /**
+     * @return month number 1 ~ 12 of MONTH, 0 if it is not a month name, see DbUtil.monthNumber
+     */
+    public int getMonthNumber() {
+        return dictionary != null ? monthNumbers[code(Column.MONTH)] : DbUtil.monthNumber(page, position(Column.MONTH));
+    }
+
+    public int getId() {
+        return getInt(Column.ID);
+    }
+
+    public String getDateTime() {
+        return getString(Column.DATE_TIME);
+    }
+
+    public int getYear() {
+        return getInt(Column.YEAR);
+    }
+
+    public String getMonth() {
+        return getString(Column.MONTH);
+    }
+
+    public int getMDate() {
+        return getInt(Column.M_DATE);
+    }
+
+    public String getDay() {
+        return getString(Column.DAY);
+    }
+
+    public int getTime() {
+        return getInt(Column.TIME);
+    }
+
+    public int getSensorId() {
+        return getInt(Column.SENSOR_ID);
+    }
+
+    public String getSensorName() {
+        return getString(Column.SENSOR_NAME);
+    }
+
+    public int getHourlyCounts() {
+        return getInt(Column.HOURLY_COUNTS);
+    }
+
+    public String getSdtName() {
+        return getString(Column.SDT_NAME);
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Zone map of a heap file: the min and max of some int columns in every data page, e.g. heap.40960.zone
+ * A scan skips the pages whose [min, max] of a column can not hold the searched values. IDs, YEAR and
+ * the date times are nearly monotonic in load order, so an ID or YEAR search reads a few pages only.
+ * <p>
+ * magic | version | page count | record count (long) | column count | column ordinals
+ * | for each data page, for each column: min | max
+ * The page and record counts are the ones of the heap file header, a zone map not matching them is rebuilt.
+ * An empty page has min Integer.MAX_VALUE and max Integer.MIN_VALUE, so it never matches.
+ *
+ * @author Kit T
+ * @version 1.0
+ * @since 11-April-2021
+ */
+public class ZoneMap {
+
+    static final int MAGIC = 0x445A4D50;
+    static final int VERSION = 1;
+
+    /** columns of the zone map */
+    static final Column[] COLUMNS = {Column.ID, Column.YEAR, Column.SENSOR_ID, Column.HOURLY_COUNTS};
+
+    /** number of ints of one page in the zones */
+    static final int PAGE_ZONE_SIZE = 2 * COLUMNS.length;
+
+    private static final int HEADER_SIZE = 24 + Integer.BYTES * COLUMNS.length;
+
+    /** number of pages in the heap file, header page included */
+    private final int pageCount;
+    private final long recordCount;
+    /** min and max of each column of each data page, from HeapFile.FIRST_PAGE */
+    private final int[] zones;
+    /** index of each column in a page zone, -1 if the column is not in the zone map */
+    private final int[] columnIndexes = new int[Column.ALL.length];
+
+    /**
+     * @param pageCount   number of pages in the heap file, header page included
+     * @param recordCount number of records in the heap file
+     * @param zones       PAGE_ZONE_SIZE ints per data page, see zone
+     */
+    public ZoneMap(int pageCount, long recordCount, int[] zones) {
+        this.pageCount = pageCount;
+        this.recordCount = recordCount;
+        this.zones = zones;
+        Arrays.fill(columnIndexes, -1);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columnIndexes[COLUMNS[i].ordinal()] = i;
+        }
+    }
+
+    /**
+     * compute the min and max of every column of the zone map in one data page
+     *
+     * @param page   data page, the columns of the zone map are read
+     * @param layout page layout of the heap file
+     * @param zones  zones of the data pages
+     * @param offset starting point of the page zone in zones
+     */
+    static void zone(ByteBuffer page, PageLayout layout, int[] zones, int offset) {
+        int count = HeapFile.recordCount(page);
+        for (Column column : COLUMNS) {
+            int start = layout.position(0, column), stride = layout.stride(column);
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (int slot = 0; slot < count; slot++) {
+                int value = page.getInt(start + slot * stride);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            zones[offset++] = min;
+            zones[offset++] = max;
+        }
+    }
+
+    /**
+     * @param pageNo page number of a data page
+     * @param column column of the search
+     * @param from   smallest searched value
+     * @param to     largest searched value
+     * @return false if no record of the page has a value of the column in [from, to],
+     * true if some may have one or the zone map does not know the page or the column
+     */
+    public boolean mayContain(int pageNo, Column column, int from, int to) {
+        int i = columnIndexes[column.ordinal()];
+        int offset = (pageNo - HeapFile.FIRST_PAGE) * PAGE_ZONE_SIZE + 2 * i;
+        if (i == -1 || pageNo < HeapFile.FIRST_PAGE || offset >= zones.length) {
+            return true;
+        }
+        return zones[offset] <= to && zones[offset + 1] >= from;
+    }
+
+    /**
+     * write the zone map file
+     *
+     * @param path zone map file path
+     * @throws IOException when writing fails
+     */
+    void write(String path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES * zones.length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(pageCount).putLong(recordCount).putInt(COLUMNS.length);
+        for (Column column : COLUMNS) {
+            buffer.putInt(column.ordinal());
+        }
+        buffer.asIntBuffer().put(zones);
+        buffer.clear();
+        try (FileChannel out = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Read the zone map file of a heap file
+     *
+     * @param path   zone map file path
+     * @param header file header of the heap file
+     * @return zone map of the heap file
+     * @throws IOException when the file can not be read or does not belong to the heap file
+     */
+    static ZoneMap read(String path, HeapFile.Header header) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = in.size();
+            int zoneCount = (header.pageCount - HeapFile.FIRST_PAGE) * PAGE_ZONE_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + Integer.BYTES * zoneCount);
+            boolean valid = size == buffer.capacity();
+            if (valid) {
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer) == -1) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                valid = buffer.remaining() == size && buffer.getInt() == MAGIC && buffer.getInt() == VERSION
+                        && buffer.getInt() == header.pageCount && buffer.getLong() == header.recordCount
+                        && buffer.getInt() == COLUMNS.length;
+                for (int i = 0; valid && i < COLUMNS.length; i++) {
+                    valid = buffer.getInt() == COLUMNS[i].ordinal();
+                }
+            }
+            if (!valid) {
+                throw new IOException("zone map " + path + " does not match the heap file");
+            }
+            int[] zones = new int[zoneCount];
+            buffer.asIntBuffer().get(zones);
+            return new ZoneMap(header.pageCount, header.recordCount, zones);
+        }
+    }
+
+    /**
+     * Build the zone map file of a heap file, the heap file is scanned once on the columns of the zone map
+     *
+     * @param heapFile heap file path
+     * @throws IOException when reading or writing fails or a page is corrupted
+     */
+    static void build(String heapFile) throws IOException {
+        ZoneMap zoneMap;
+        try (FileChannel heap = FileChannel.open(Paths.get(heapFile), StandardOpenOption.READ)) {
+            HeapFile.Header header = HeapFile.readHeader(heap);
+            PageLayout layout = header.pageLayout();
+            ByteBuffer page = ByteBuffer.allocate(layout.getPageSize());
+            int[] zones = new int[(header.pageCount - HeapFile.FIRST_PAGE) * PAGE_ZONE_SIZE];
+            for (int pageNo = HeapFile.FIRST_PAGE; pageNo < header.pageCount; pageNo++) {
+                layout.read(heap, pageNo, page, COLUMNS);
+                layout.check(page, pageNo, COLUMNS);
+                zone(page, layout, zones, (pageNo - HeapFile.FIRST_PAGE) * PAGE_ZONE_SIZE);
+            }
+            zoneMap = new ZoneMap(header.pageCount, header.recordCount, zones);
+        }
+        zoneMap.write(path(heapFile));
+    }
+
+    /**
+     * get the zone map file name for the given heap file, e.g. heap.40960 -> heap.40960.zone
+     *
+     * @param heapFile heap file path
+     * @return zone map file path
+     */
+    static String path(String heapFile) {
+        return heapFile + ".zone";
+    }
+}